@@ -83,6 +83,51 @@ public class Constants {
      */
     public static final String BCRYPT_WORK_ENV = "DOCS_BCRYPT_WORK";
 
+    /**
+     * Interval between two Lucene index commits in seconds.
+     */
+    public static final String LUCENE_COMMIT_INTERVAL_ENV = "DOCS_LUCENE_COMMIT_INTERVAL";
+
+    /**
+     * Resolve all search criteria in Lucene environment variable.
+     */
+    public static final String LUCENE_FILTERING_ENV = "DOCS_LUCENE_FILTERING";
+
+    /**
+     * Maximum number of cached search results environment variable.
+     */
+    public static final String SEARCH_CACHE_SIZE_ENV = "DOCS_SEARCH_CACHE_SIZE";
+
+    /**
+     * Load entities in read-only mode in GET requests environment variable.
+     */
+    public static final String READ_ONLY_GET_ENV = "DOCS_READ_ONLY_GET";
+
+    /**
+     * Maximum size of the decrypted thumbnails cache in megabytes environment variable.
+     */
+    public static final String THUMBNAIL_CACHE_SIZE_ENV = "DOCS_THUMBNAIL_CACHE_SIZE";
+
+    /**
+     * Number of files processed concurrently environment variable.
+     */
+    public static final String FILE_PROCESSING_THREADS_ENV = "DOCS_FILE_PROCESSING_THREADS";
+
+    /**
+     * Maximum number of files waiting to be processed in each lane environment variable.
+     */
+    public static final String FILE_PROCESSING_QUEUE_SIZE_ENV = "DOCS_FILE_PROCESSING_QUEUE_SIZE";
+
+    /**
+     * JPEG quality of the generated thumbnails environment variable.
+     */
+    public static final String THUMBNAIL_QUALITY_ENV = "DOCS_THUMBNAIL_QUALITY";
+
+    /**
+     * Only jwt issuer trusted environment variable.
+     */
+    public static final String JWT_ISSUER_ENV = "DOCS_JWT_ISSUER";
+
     /**
      * Expiration time of the password recovery in hours.
      */
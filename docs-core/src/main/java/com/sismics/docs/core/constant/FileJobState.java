@@ -0,0 +1,21 @@
+package com.sismics.docs.core.constant;
+
+/**
+ * File processing job states.
+ */
+public enum FileJobState {
+    /**
+     * Waiting to be taken by a node.
+     */
+    PENDING,
+
+    /**
+     * Taken by a node, until its lease expires.
+     */
+    RUNNING,
+
+    /**
+     * Given up after too many attempts.
+     */
+    FAILED
+}
@@ -0,0 +1,21 @@
+package com.sismics.docs.core.constant;
+
+/**
+ * File processing lanes, by decreasing priority.
+ */
+public enum FileProcessingLane {
+    /**
+     * Files uploaded by a user.
+     */
+    INTERACTIVE,
+
+    /**
+     * Files imported in batch.
+     */
+    BATCH,
+
+    /**
+     * Files processed again.
+     */
+    REPROCESS
+}
@@ -2,10 +2,18 @@ package com.sismics.docs.core.dao;
 
 import com.sismics.docs.core.constant.ConfigType;
 import com.sismics.docs.core.model.jpa.Config;
+import com.sismics.docs.core.util.ConfigUtil;
 import com.sismics.util.context.ThreadLocalContext;
+import com.sismics.util.jpa.EMF;
 
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.NoResultException;
+import jakarta.persistence.Query;
+import org.apache.commons.lang3.EnumUtils;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Configuration parameter DAO.
@@ -34,6 +42,33 @@ public class ConfigDao {
         }
     }
 
+    /**
+     * Returns the committed values of all configuration parameters.
+     * The values are read in a new entity manager, independent of the current transaction.
+     * Parameters unknown to this version (e.g. DB_VERSION) are ignored.
+     *
+     * @return Values by configuration parameter ID
+     */
+    @SuppressWarnings("unchecked")
+    public Map<ConfigType, String> findAllValues() {
+        List<Object[]> l;
+        EntityManager em = EMF.get().createEntityManager();
+        try {
+            Query q = em.createNativeQuery("select c.CFG_ID_C, c.CFG_VALUE_C from T_CONFIG c");
+            l = q.getResultList();
+        } finally {
+            em.close();
+        }
+        Map<ConfigType, String> valueMap = new EnumMap<>(ConfigType.class);
+        for (Object[] o : l) {
+            String id = (String) o[0];
+            if (EnumUtils.isValidEnum(ConfigType.class, id)) {
+                valueMap.put(ConfigType.valueOf(id), (String) o[1]);
+            }
+        }
+        return valueMap;
+    }
+
     /**
      * Updates a configuration parameter.
      *
@@ -51,5 +86,6 @@ public class ConfigDao {
         } else {
             config.setValue(value);
         }
+        ThreadLocalContext.get().addCommitAction(() -> ConfigUtil.update(id, value));
     }
 }
@@ -12,8 +12,11 @@ import jakarta.persistence.NoResultException;
 import jakarta.persistence.Query;
 import jakarta.persistence.TypedQuery;
 import java.sql.Timestamp;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 /**
@@ -45,16 +48,22 @@ public class DocumentDao {
     }
     
     /**
-     * Returns the list of all active documents.
+     * Returns a batch of active documents, ordered by ID.
+     * Keyset pagination: the next batch starts right after the last ID of the previous one.
      *
-     * @param offset Offset
+     * @param lastId Last ID of the previous batch (null for the first batch)
      * @param limit Limit
      * @return List of documents
      */
-    public List<Document> findAll(int offset, int limit) {
+    public List<Document> findAfter(String lastId, int limit) {
         EntityManager em = ThreadLocalContext.get().getEntityManager();
-        TypedQuery<Document> q = em.createQuery("select d from Document d where d.deleteDate is null", Document.class);
-        q.setFirstResult(offset);
+        TypedQuery<Document> q;
+        if (lastId == null) {
+            q = em.createQuery("select d from Document d where d.deleteDate is null order by d.id", Document.class);
+        } else {
+            q = em.createQuery("select d from Document d where d.deleteDate is null and d.id > :lastId order by d.id", Document.class);
+            q.setParameter("lastId", lastId);
+        }
         q.setMaxResults(limit);
         return q.getResultList();
     }
@@ -188,6 +197,26 @@ public class DocumentDao {
         }
     }
     
+    /**
+     * Returns the language of active documents.
+     *
+     * @param idList Document IDs
+     * @return Languages by document ID
+     */
+    public Map<String, String> getLanguageById(Collection<String> idList) {
+        Map<String, String> languageMap = new HashMap<>();
+        if (idList.isEmpty()) {
+            return languageMap;
+        }
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        TypedQuery<Object[]> q = em.createQuery("select d.id, d.language from Document d where d.id in (:idList) and d.deleteDate is null", Object[].class);
+        q.setParameter("idList", idList);
+        for (Object[] o : q.getResultList()) {
+            languageMap.put((String) o[0], (String) o[1]);
+        }
+        return languageMap;
+    }
+
     /**
      * Update a document and log the action.
      * 
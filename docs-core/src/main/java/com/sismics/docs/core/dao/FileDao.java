@@ -9,6 +9,7 @@ import jakarta.persistence.NoResultException;
 import jakarta.persistence.Query;
 import jakarta.persistence.TypedQuery;
 
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
@@ -59,6 +60,38 @@ public class FileDao {
         return q.getResultList();
     }
     
+    /**
+     * Returns a batch of active files, ordered by ID.
+     * Keyset pagination: the next batch starts right after the last ID of the previous one.
+     *
+     * @param lastId Last ID of the previous batch (null for the first batch)
+     * @param limit Limit
+     * @return List of files
+     */
+    public List<File> findAfter(String lastId, int limit) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        TypedQuery<File> q;
+        if (lastId == null) {
+            q = em.createQuery("select f from File f where f.deleteDate is null order by f.id", File.class);
+        } else {
+            q = em.createQuery("select f from File f where f.deleteDate is null and f.id > :lastId order by f.id", File.class);
+            q.setParameter("lastId", lastId);
+        }
+        q.setMaxResults(limit);
+        return q.getResultList();
+    }
+
+    /**
+     * Returns the number of active files.
+     *
+     * @return Number of files
+     */
+    public long getFileCount() {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        Query query = em.createNativeQuery("select count(f.FIL_ID_C) from T_FILE f where f.FIL_DELETEDATE_D is null");
+        return ((Number) query.getSingleResult()).longValue();
+    }
+
     /**
      * Returns the list of all files from a user.
      * 
@@ -234,6 +267,24 @@ public class FileDao {
         return result;
     }
 
+    /**
+     * Get the extracted content of files.
+     *
+     * @param ids Files IDs
+     * @return Content per file ID
+     */
+    public Map<String, String> getContentById(Collection<String> ids) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        Query q = em.createQuery("select f.id, f.content from File f where f.id in :ids");
+        q.setParameter("ids", ids);
+        Map<String, String> result = new HashMap<>();
+        q.getResultList().forEach(o -> {
+            Object[] resultLine = (Object[]) o;
+            result.put((String) resultLine[0], (String) resultLine[1]);
+        });
+        return result;
+    }
+
     /**
      * Get all files from a version.
      *
@@ -0,0 +1,150 @@
+package com.sismics.docs.core.dao;
+
+import com.sismics.docs.core.constant.FileJobState;
+import com.sismics.docs.core.model.jpa.FileJob;
+import com.sismics.util.context.ThreadLocalContext;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import jakarta.persistence.TypedQuery;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * File processing job DAO.
+ */
+public class FileJobDao {
+    /**
+     * Creates a new pending job.
+     *
+     * @param fileJob File job
+     * @return New ID
+     */
+    public String create(FileJob fileJob) {
+        // Create the UUID
+        fileJob.setId(UUID.randomUUID().toString());
+
+        // Create the job
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        fileJob.setState(FileJobState.PENDING);
+        fileJob.setAttempt(0);
+        fileJob.setCreateDate(new Date());
+        em.persist(fileJob);
+
+        return fileJob.getId();
+    }
+
+    /**
+     * Returns a job by ID.
+     *
+     * @param id Job ID
+     * @return File job
+     */
+    public FileJob getById(String id) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        return em.find(FileJob.class, id);
+    }
+
+    /**
+     * Take a job for a node, if it is pending or if its previous lease has expired.
+     * Counts a new processing attempt.
+     *
+     * @param id Job ID
+     * @param leaseOwner Node taking the job
+     * @param leaseExpireDate Lease expiration date
+     * @return True if the job has been taken
+     */
+    public boolean lease(String id, String leaseOwner, Date leaseExpireDate) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        Query q = em.createQuery("update FileJob j set j.state = :running, j.leaseOwner = :leaseOwner, j.leaseExpireDate = :leaseExpireDate, j.attempt = j.attempt + 1 " +
+                " where j.id = :id and (j.state = :pending or (j.state = :running and j.leaseExpireDate < :now))");
+        q.setParameter("running", FileJobState.RUNNING);
+        q.setParameter("pending", FileJobState.PENDING);
+        q.setParameter("leaseOwner", leaseOwner);
+        q.setParameter("leaseExpireDate", leaseExpireDate);
+        q.setParameter("id", id);
+        q.setParameter("now", new Date());
+        return q.executeUpdate() == 1;
+    }
+
+    /**
+     * Extends the leases held by a node.
+     *
+     * @param leaseOwner Node holding the leases
+     * @param idList IDs of the jobs still processed by the node
+     * @param leaseExpireDate New lease expiration date
+     */
+    public void renewLeases(String leaseOwner, List<String> idList, Date leaseExpireDate) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        Query q = em.createQuery("update FileJob j set j.leaseExpireDate = :leaseExpireDate where j.id in (:idList) and j.leaseOwner = :leaseOwner and j.state = :running");
+        q.setParameter("leaseExpireDate", leaseExpireDate);
+        q.setParameter("idList", idList);
+        q.setParameter("leaseOwner", leaseOwner);
+        q.setParameter("running", FileJobState.RUNNING);
+        q.executeUpdate();
+    }
+
+    /**
+     * Returns the jobs to resume: pending jobs created before a date
+     * and running jobs whose lease has expired, oldest first.
+     *
+     * @param createDateMax Maximum creation date of the pending jobs
+     * @param limit Maximum number of jobs
+     * @return List of jobs
+     */
+    public List<FileJob> findResumable(Date createDateMax, int limit) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        TypedQuery<FileJob> q = em.createQuery("select j from FileJob j where (j.state = :pending and j.createDate < :createDateMax) " +
+                " or (j.state = :running and j.leaseExpireDate < :now) order by j.createDate asc", FileJob.class);
+        q.setParameter("pending", FileJobState.PENDING);
+        q.setParameter("running", FileJobState.RUNNING);
+        q.setParameter("createDateMax", createDateMax);
+        q.setParameter("now", new Date());
+        q.setMaxResults(limit);
+        return q.getResultList();
+    }
+
+    /**
+     * Gives back a job taken by a node before its processing started, it will be resumed later.
+     * The processing attempt is not counted.
+     *
+     * @param id Job ID
+     * @param leaseOwner Node holding the lease
+     */
+    public void release(String id, String leaseOwner) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        Query q = em.createQuery("update FileJob j set j.state = :pending, j.leaseOwner = null, j.leaseExpireDate = null, j.attempt = j.attempt - 1 " +
+                " where j.id = :id and j.leaseOwner = :leaseOwner and j.state = :running");
+        q.setParameter("pending", FileJobState.PENDING);
+        q.setParameter("running", FileJobState.RUNNING);
+        q.setParameter("id", id);
+        q.setParameter("leaseOwner", leaseOwner);
+        q.executeUpdate();
+    }
+
+    /**
+     * Marks a job as failed, it will not be resumed anymore.
+     *
+     * @param id Job ID
+     */
+    public void fail(String id) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        Query q = em.createQuery("update FileJob j set j.state = :failed, j.leaseOwner = null, j.leaseExpireDate = null where j.id = :id");
+        q.setParameter("failed", FileJobState.FAILED);
+        q.setParameter("id", id);
+        q.executeUpdate();
+    }
+
+    /**
+     * Deletes a completed job.
+     *
+     * @param id Job ID
+     */
+    public void delete(String id) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        Query q = em.createQuery("delete FileJob j where j.id = :id");
+        q.setParameter("id", id);
+        q.executeUpdate();
+    }
+}
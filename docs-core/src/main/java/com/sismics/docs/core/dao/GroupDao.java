@@ -163,10 +163,16 @@ public class GroupDao {
         Map<String, Object> parameterMap = new HashMap<>();
         List<String> criteriaList = new ArrayList<>();
         
-        StringBuilder sb = new StringBuilder("select g.GRP_ID_C as c0, g.GRP_NAME_C as c1, g.GRP_IDPARENT_C as c2, gp.GRP_NAME_C as c3, g.GRP_IDROLE_C ");
-        if (criteria.getUserId() != null) {
-            sb.append(" , ug.UGP_ID_C ");
+        StringBuilder sb = new StringBuilder();
+        if (criteria.getUserId() != null && criteria.isRecursive()) {
+            // Groups of the user and their parents, walking up the hierarchy (max depth 10 to avoid infinite loop)
+            sb.append("with recursive GROUP_HIERARCHY(GROUP_ID, DEPTH) as (");
+            sb.append(" select ug.UGP_IDGROUP_C, 0 from T_USER_GROUP ug where ug.UGP_IDUSER_C = :userId and ug.UGP_DELETEDATE_D is null ");
+            sb.append(" union all ");
+            sb.append(" select hg.GRP_IDPARENT_C, h.DEPTH + 1 from GROUP_HIERARCHY h join T_GROUP hg on hg.GRP_ID_C = h.GROUP_ID ");
+            sb.append(" where hg.GRP_IDPARENT_C is not null and hg.GRP_DELETEDATE_D is null and h.DEPTH < 10) ");
         }
+        sb.append("select g.GRP_ID_C as c0, g.GRP_NAME_C as c1, g.GRP_IDPARENT_C as c2, gp.GRP_NAME_C as c3, g.GRP_IDROLE_C ");
         sb.append(" from T_GROUP g ");
         sb.append(" left join T_GROUP gp on g.GRP_IDPARENT_C = gp.GRP_ID_C ");
         
@@ -176,9 +182,11 @@ public class GroupDao {
             parameterMap.put("search", "%" + criteria.getSearch() + "%");
         }
         if (criteria.getUserId() != null) {
-            // Left join and post-filtering for recursive groups
-            sb.append(criteria.isRecursive() ? " left " : "");
-            sb.append(" join T_USER_GROUP ug on ug.UGP_IDGROUP_C = g.GRP_ID_C and ug.UGP_IDUSER_C = :userId and ug.UGP_DELETEDATE_D is null ");
+            if (criteria.isRecursive()) {
+                criteriaList.add("g.GRP_ID_C in (select h.GROUP_ID from GROUP_HIERARCHY h)");
+            } else {
+                sb.append(" join T_USER_GROUP ug on ug.UGP_IDGROUP_C = g.GRP_ID_C and ug.UGP_IDUSER_C = :userId and ug.UGP_DELETEDATE_D is null ");
+            }
             parameterMap.put("userId", criteria.getUserId());
         }
         
@@ -194,7 +202,6 @@ public class GroupDao {
         
         // Assemble results
         List<GroupDto> groupDtoList = new ArrayList<>();
-        List<GroupDto> userGroupDtoList = new ArrayList<>();
         for (Object[] o : l) {
             int i = 0;
             GroupDto groupDto = new GroupDto()
@@ -202,47 +209,13 @@ public class GroupDao {
                 .setName((String) o[i++])
                 .setParentId((String) o[i++])
                 .setParentName((String) o[i++])
-                .setRoleId((String) o[i++]);
+                .setRoleId((String) o[i]);
             groupDtoList.add(groupDto);
-            if (criteria.getUserId() != null && o[i] != null) {
-                userGroupDtoList.add(groupDto);
-            }
-        }
-        
-        // Post-query filtering for recursive groups
-        if (criteria.getUserId() != null && criteria.isRecursive()) {
-            Set<GroupDto> filteredGroupDtoSet = new HashSet<>();
-            for (GroupDto userGroupDto : userGroupDtoList) {
-                filteredGroupDtoSet.add(userGroupDto); // Direct group
-                findGroupParentHierarchy(filteredGroupDtoSet, groupDtoList, userGroupDto, 0); // Indirect groups
-            }
-            groupDtoList = new ArrayList<>(filteredGroupDtoSet);
         }
         
         return groupDtoList;
     }
     
-    /**
-     * Recursively search group's parents.
-     * 
-     * @param parentGroupDtoSet Resulting parents
-     * @param groupDtoList All groups
-     * @param userGroupDto Reference group to search from
-     * @param depth Depth
-     */
-    private void findGroupParentHierarchy(Set<GroupDto> parentGroupDtoSet, List<GroupDto> groupDtoList, GroupDto userGroupDto, int depth) {
-        if (userGroupDto.getParentId() == null || depth == 10) { // Max depth 10 to avoid infinite loop
-            return;
-        }
-        
-        for (GroupDto groupDto : groupDtoList) {
-            if (groupDto.getId().equals(userGroupDto.getParentId())) {
-                parentGroupDtoSet.add(groupDto); // Add parent
-                findGroupParentHierarchy(parentGroupDtoSet, groupDtoList, groupDto, depth + 1); // Find parent's parents
-            }
-        }
-    }
-    
     /**
      * Update a group.
      * 
@@ -12,6 +12,11 @@ public class DocumentUpdatedAsyncEvent extends UserEvent {
      * Document ID.
      */
     private String documentId;
+
+    /**
+     * True if the document language has changed.
+     */
+    private boolean languageChanged;
     
     public String getDocumentId() {
         return documentId;
@@ -21,10 +26,19 @@ public class DocumentUpdatedAsyncEvent extends UserEvent {
         this.documentId = documentId;
     }
 
+    public boolean isLanguageChanged() {
+        return languageChanged;
+    }
+
+    public void setLanguageChanged(boolean languageChanged) {
+        this.languageChanged = languageChanged;
+    }
+
     @Override
     public String toString() {
         return MoreObjects.toStringHelper(this)
             .add("documentId", documentId)
+            .add("languageChanged", languageChanged)
             .toString();
     }
 }
\ No newline at end of file
@@ -60,6 +60,12 @@ public class DocumentUpdatedAsyncListener {
             // Update database and index
             documentDao.updateFileId(document);
             AppContext.getInstance().getIndexingHandler().updateDocument(document);
+            if (event.isLanguageChanged()) {
+                // The files content is indexed in the language of the document
+                for (File file : fileList) {
+                    AppContext.getInstance().getIndexingHandler().updateFile(file);
+                }
+            }
 
             // Update contributors list
             ContributorDao contributorDao = new ContributorDao();
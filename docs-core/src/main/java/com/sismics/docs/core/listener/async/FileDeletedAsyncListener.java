@@ -56,6 +56,7 @@ public class FileDeletedAsyncListener {
 
         // Delete the file from storage
         FileUtil.delete(event.getFileId());
+        AppContext.getInstance().getThumbnailCache().invalidate(event.getFileId());
 
         TransactionUtil.handle(() -> {
             // Update index
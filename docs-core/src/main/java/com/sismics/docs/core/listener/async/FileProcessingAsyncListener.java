@@ -1,8 +1,11 @@
 package com.sismics.docs.core.listener.async;
 
+import com.google.common.base.Strings;
 import com.google.common.eventbus.AllowConcurrentEvents;
 import com.google.common.eventbus.Subscribe;
+import com.sismics.docs.core.constant.Constants;
 import com.sismics.docs.core.dao.FileDao;
+import com.sismics.docs.core.dao.FileJobDao;
 import com.sismics.docs.core.dao.UserDao;
 import com.sismics.docs.core.event.FileCreatedAsyncEvent;
 import com.sismics.docs.core.event.FileEvent;
@@ -10,6 +13,7 @@ import com.sismics.docs.core.event.FileUpdatedAsyncEvent;
 import com.sismics.docs.core.model.context.AppContext;
 import com.sismics.docs.core.model.jpa.File;
 import com.sismics.docs.core.model.jpa.User;
+import com.sismics.docs.core.service.FileProcessingService;
 import com.sismics.docs.core.util.DirectoryUtil;
 import com.sismics.docs.core.util.EncryptionUtil;
 import com.sismics.docs.core.util.FileUtil;
@@ -41,6 +45,26 @@ public class FileProcessingAsyncListener {
      */
     private static final Logger log = LoggerFactory.getLogger(FileProcessingAsyncListener.class);
 
+    /**
+     * Size of the "web" image.
+     */
+    private static final int WEB_SIZE = 1280;
+
+    /**
+     * Size of the "thumb" image.
+     */
+    private static final int THUMB_SIZE = 256;
+
+    /**
+     * Default JPEG quality of the generated images.
+     */
+    private static final float DEFAULT_QUALITY = 1.f;
+
+    /**
+     * JPEG quality of the generated images.
+     */
+    private final float quality = getQuality();
+
     /**
      * File created.
      *
@@ -53,7 +77,7 @@ public class FileProcessingAsyncListener {
             log.info("File created event: " + event.toString());
         }
 
-        processFile(event, true);
+        submit(event, true);
     }
 
     /**
@@ -66,13 +90,43 @@ public class FileProcessingAsyncListener {
     public void on(final FileUpdatedAsyncEvent event) {
         log.info("File updated event: " + event.toString());
 
-        processFile(event, false);
+        AppContext.getInstance().getThumbnailCache().invalidate(event.getFileId());
+        submit(event, false);
+    }
+
+    /**
+     * Submit a file processing, if its job is not already taken.
+     *
+     * @param event File event
+     * @param isFileCreated True if the file was just created
+     */
+    private void submit(FileEvent event, boolean isFileCreated) {
+        FileProcessingService fileProcessingService = AppContext.getInstance().getFileProcessingService();
+        if (event.getJobId() != null && !fileProcessingService.leaseJob(event.getJobId())) {
+            log.info("File processing job already taken: " + event.getJobId());
+            return;
+        }
+
+        boolean accepted = fileProcessingService.submit(event.getLane(), () -> {
+            try {
+                processFile(event, isFileCreated);
+            } finally {
+                // If the job has not been deleted, its lease expires and it will be resumed
+                fileProcessingService.releaseJob(event.getJobId());
+            }
+        });
+        if (!accepted) {
+            // Too many files waiting in the lane, the job is resumed once they are processed
+            log.info("File processing queue full, postponing the job: " + event.getJobId());
+            fileProcessingService.postponeJob(event.getJobId());
+        }
     }
 
     /**
      * Process a file :
      * Generate thumbnails
      * Extract and save text content
+     * The processing job is deleted with the saved content.
      *
      * @param event File event
      * @param isFileCreated True if the file was just created
@@ -87,12 +141,16 @@ public class FileProcessingAsyncListener {
             file.set(new FileDao().getActiveById(event.getFileId()));
             if (file.get() == null) {
                 // The file has been deleted since
+                deleteJob(event);
                 return;
             }
 
             // Get the creating user from the database for its private key
             UserDao userDao = new UserDao();
             user.set(userDao.getById(file.get().getUserId()));
+            if (user.get() == null) {
+                deleteJob(event);
+            }
         });
 
         // Process the file outside of a transaction
@@ -105,6 +163,8 @@ public class FileProcessingAsyncListener {
 
         // Open a new transaction to save the file content
         TransactionUtil.handle(() -> {
+            deleteJob(event);
+
             // Save the file to database
             FileDao fileDao = new FileDao();
             File freshFile = fileDao.getActiveById(event.getFileId());
@@ -127,6 +187,17 @@ public class FileProcessingAsyncListener {
         FileUtil.endProcessingFile(event.getFileId());
     }
 
+    /**
+     * Delete the processing job of an event, in the current transaction.
+     *
+     * @param event File event
+     */
+    private void deleteJob(FileEvent event) {
+        if (event.getJobId() != null) {
+            new FileJobDao().delete(event.getJobId());
+        }
+    }
+
     /**
      * Extract text content from a file.
      * This is executed outside of a transaction.
@@ -147,24 +218,29 @@ public class FileProcessingAsyncListener {
         // Generate file variations
         try {
             Cipher cipher = EncryptionUtil.getEncryptionCipher(user.getPrivateKey());
-            BufferedImage image = formatHandler.generateThumbnail(event.getUnencryptedFile());
+            BufferedImage image = formatHandler.generateThumbnail(event.getUnencryptedFile(), WEB_SIZE);
             if (image != null) {
-                // Generate thumbnails from image
-                BufferedImage web = Scalr.resize(image, Scalr.Method.ULTRA_QUALITY, Scalr.Mode.AUTOMATIC, 1280);
-                BufferedImage thumbnail = Scalr.resize(image, Scalr.Method.ULTRA_QUALITY, Scalr.Mode.AUTOMATIC, 256);
+                // Generate the "web" image, then the "thumb" image from the smaller "web" image
+                BufferedImage web = Scalr.resize(image, Scalr.Method.ULTRA_QUALITY, Scalr.Mode.AUTOMATIC, WEB_SIZE);
                 image.flush();
+                BufferedImage thumbnail = Scalr.resize(web, Scalr.Method.ULTRA_QUALITY, Scalr.Mode.AUTOMATIC, THUMB_SIZE);
 
                 // Write "web" encrypted image
                 Path outputFile = DirectoryUtil.getStorageDirectory().resolve(file.getId() + "_web");
                 try (OutputStream outputStream = new CipherOutputStream(Files.newOutputStream(outputFile), cipher)) {
-                    ImageUtil.writeJpeg(web, outputStream);
+                    ImageUtil.writeJpeg(web, outputStream, quality);
                 }
+                web.flush();
 
                 // Write "thumb" encrypted image
                 outputFile = DirectoryUtil.getStorageDirectory().resolve(file.getId() + "_thumb");
                 try (OutputStream outputStream = new CipherOutputStream(Files.newOutputStream(outputFile), cipher)) {
-                    ImageUtil.writeJpeg(thumbnail, outputStream);
+                    ImageUtil.writeJpeg(thumbnail, outputStream, quality);
                 }
+                thumbnail.flush();
+
+                // Images read while they were written must not be served
+                AppContext.getInstance().getThumbnailCache().invalidate(file.getId());
             }
         } catch (Throwable e) {
             log.error("Unable to generate thumbnails for: " + file, e);
@@ -183,4 +259,25 @@ public class FileProcessingAsyncListener {
 
         return content;
     }
+
+    /**
+     * Returns the JPEG quality of the generated images.
+     *
+     * @return JPEG quality, between 0 and 1
+     */
+    private static float getQuality() {
+        String envQuality = System.getenv(Constants.THUMBNAIL_QUALITY_ENV);
+        if (!Strings.isNullOrEmpty(envQuality)) {
+            try {
+                float quality = Float.parseFloat(envQuality);
+                if (quality > 0 && quality <= 1) {
+                    return quality;
+                }
+            } catch (NumberFormatException e) {
+                // NOP
+            }
+            log.warn(Constants.THUMBNAIL_QUALITY_ENV + " needs to be a number between 0 and 1. Falling back to " + DEFAULT_QUALITY + ".");
+        }
+        return DEFAULT_QUALITY;
+    }
 }
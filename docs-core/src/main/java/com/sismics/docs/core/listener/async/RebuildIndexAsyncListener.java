@@ -9,14 +9,21 @@ import com.sismics.docs.core.model.context.AppContext;
 import com.sismics.docs.core.model.jpa.Document;
 import com.sismics.docs.core.model.jpa.File;
 import com.sismics.docs.core.util.TransactionUtil;
+import com.sismics.docs.core.util.indexing.IndexRebuildProgress;
+import com.sismics.docs.core.util.indexing.IndexingHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Listener on rebuild index.
- * 
+ *
  * @author bgamard
  */
 public class RebuildIndexAsyncListener {
@@ -25,9 +32,26 @@ public class RebuildIndexAsyncListener {
      */
     private static final Logger log = LoggerFactory.getLogger(RebuildIndexAsyncListener.class);
 
+    /**
+     * Number of documents or files loaded and indexed at once.
+     */
+    private static final int BATCH_SIZE = 100;
+
+    /**
+     * Progress of the rebuild.
+     */
+    private final IndexRebuildProgress progress;
+
+    public RebuildIndexAsyncListener(IndexRebuildProgress progress) {
+        this.progress = progress;
+    }
+
     /**
      * Rebuild Lucene index.
-     * 
+     * Batches are loaded with keyset pagination in short transactions,
+     * and indexed in parallel into a side index swapped in at the end.
+     * If a batch fails, the side index is discarded and the current index is kept.
+     *
      * @param event Index rebuild event
      */
     @Subscribe
@@ -37,35 +61,134 @@ public class RebuildIndexAsyncListener {
             log.info("Rebuild index event: " + event.toString());
         }
 
-        // Clear the index
-        AppContext.getInstance().getIndexingHandler().clearIndex();
+        if (!progress.start()) {
+            log.info("An index rebuild is already running, ignoring this event");
+            return;
+        }
+
+        IndexingHandler indexingHandler = AppContext.getInstance().getIndexingHandler();
+        ThreadPoolExecutor executor = newIndexingExecutor();
+        AtomicInteger failedBatchCount = new AtomicInteger();
+        long loadedDocumentCount = 0;
+        long loadedFileCount = 0;
+        try {
+            TransactionUtil.handle(() -> {
+                progress.setDocumentCount(new DocumentDao().getDocumentCount());
+                progress.setFileCount(new FileDao().getFileCount());
+            });
+            indexingHandler.startRebuild();
 
-        // Index all documents
-        TransactionUtil.handle(() -> {
-            int offset = 0;
-            DocumentDao documentDao = new DocumentDao();
+            // Index all documents
+            String lastId = null;
             List<Document> documentList;
             do {
-                documentList = documentDao.findAll(offset, 100);
-                AppContext.getInstance().getIndexingHandler().createDocuments(documentList);
-                offset += 100;
-            } while (documentList.size() > 0);
-        });
-
-        // Index all files
-        TransactionUtil.handle(() -> {
-            int offset = 0;
-            FileDao fileDao = new FileDao();
+                documentList = findDocuments(lastId);
+                if (!documentList.isEmpty()) {
+                    lastId = documentList.get(documentList.size() - 1).getId();
+                    loadedDocumentCount += documentList.size();
+                    final List<Document> batch = documentList;
+                    executor.execute(() -> TransactionUtil.handle(() -> {
+                        try {
+                            indexingHandler.createDocuments(batch);
+                        } catch (RuntimeException e) {
+                            failedBatchCount.incrementAndGet();
+                            throw e;
+                        }
+                        progress.addIndexedDocumentCount(batch.size());
+                    }));
+                }
+            } while (documentList.size() == BATCH_SIZE);
+
+            // Index all files
+            lastId = null;
             List<File> fileList;
             do {
-                fileList = fileDao.findAll(offset, 100);
-                AppContext.getInstance().getIndexingHandler().createFiles(fileList);
-                offset += 100;
-            } while (fileList.size() > 0);
-        });
+                fileList = findFiles(lastId);
+                if (!fileList.isEmpty()) {
+                    lastId = fileList.get(fileList.size() - 1).getId();
+                    loadedFileCount += fileList.size();
+                    final List<File> batch = fileList;
+                    executor.execute(() -> TransactionUtil.handle(() -> {
+                        try {
+                            indexingHandler.createFiles(batch);
+                        } catch (RuntimeException e) {
+                            failedBatchCount.incrementAndGet();
+                            throw e;
+                        }
+                        progress.addIndexedFileCount(batch.size());
+                    }));
+                }
+            } while (fileList.size() == BATCH_SIZE);
 
-        if (log.isInfoEnabled()) {
-            log.info("Rebuilding index done");
+            // Wait for all batches, then commit and swap the index
+            executor.shutdown();
+            if (!executor.awaitTermination(1, TimeUnit.DAYS)) {
+                throw new IllegalStateException("Timeout waiting for the indexing threads");
+            }
+
+            // Never swap in an incomplete index
+            if (failedBatchCount.get() > 0) {
+                throw new IllegalStateException(failedBatchCount.get() + " indexing batches failed");
+            }
+            if (progress.getIndexedDocumentCount() != loadedDocumentCount || progress.getIndexedFileCount() != loadedFileCount) {
+                throw new IllegalStateException("Indexed " + progress.getIndexedDocumentCount() + "/" + loadedDocumentCount
+                        + " documents and " + progress.getIndexedFileCount() + "/" + loadedFileCount + " files");
+            }
+            indexingHandler.finishRebuild();
+
+            if (log.isInfoEnabled()) {
+                log.info("Rebuilding index done");
+            }
+        } catch (Exception e) {
+            log.error("Error rebuilding the index", e);
+            executor.shutdownNow();
+            indexingHandler.cancelRebuild();
+        } finally {
+            progress.end();
         }
     }
+
+    /**
+     * Load the next batch of documents in its own transaction.
+     *
+     * @param lastId Last document ID of the previous batch
+     * @return List of documents
+     */
+    private List<Document> findDocuments(String lastId) {
+        List<Document> documentList = new ArrayList<>();
+        TransactionUtil.handle(() -> documentList.addAll(new DocumentDao().findAfter(lastId, BATCH_SIZE)));
+        return documentList;
+    }
+
+    /**
+     * Load the next batch of files in its own transaction.
+     *
+     * @param lastId Last file ID of the previous batch
+     * @return List of files
+     */
+    private List<File> findFiles(String lastId) {
+        List<File> fileList = new ArrayList<>();
+        TransactionUtil.handle(() -> fileList.addAll(new FileDao().findAfter(lastId, BATCH_SIZE)));
+        return fileList;
+    }
+
+    /**
+     * Create the executor building the Lucene documents.
+     * The queue is bounded, the loading thread indexes a batch itself when all threads are busy.
+     *
+     * @return Executor
+     */
+    private ThreadPoolExecutor newIndexingExecutor() {
+        int threadCount = Math.max(Runtime.getRuntime().availableProcessors(), 2);
+        AtomicInteger threadNumber = new AtomicInteger();
+        return new ThreadPoolExecutor(threadCount, threadCount,
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threadCount * 2),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "index-rebuild-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
 }
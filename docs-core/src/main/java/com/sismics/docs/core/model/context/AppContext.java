@@ -5,13 +5,17 @@ import com.google.common.collect.Lists;
 import com.google.common.eventbus.AsyncEventBus;
 import com.google.common.eventbus.EventBus;
 import com.sismics.docs.core.constant.Constants;
+import com.sismics.docs.core.constant.FileProcessingLane;
 import com.sismics.docs.core.dao.UserDao;
 import com.sismics.docs.core.listener.async.*;
 import com.sismics.docs.core.model.jpa.User;
+import com.sismics.docs.core.service.FileProcessingService;
 import com.sismics.docs.core.service.FileService;
 import com.sismics.docs.core.service.FileSizeService;
 import com.sismics.docs.core.service.InboxService;
 import com.sismics.docs.core.util.PdfUtil;
+import com.sismics.docs.core.util.ThumbnailCache;
+import com.sismics.docs.core.util.indexing.IndexRebuildProgress;
 import com.sismics.docs.core.util.indexing.IndexingHandler;
 import com.sismics.util.ClasspathScanner;
 import com.sismics.util.EnvironmentUtil;
@@ -56,6 +60,16 @@ public class AppContext {
      */
     private IndexingHandler indexingHandler;
 
+    /**
+     * Progress of the index rebuild.
+     */
+    private final IndexRebuildProgress indexRebuildProgress = new IndexRebuildProgress();
+
+    /**
+     * Cache of the decrypted thumbnails.
+     */
+    private final ThumbnailCache thumbnailCache = new ThumbnailCache();
+
     /**
      * Inbox scanning service.
      */
@@ -71,6 +85,11 @@ public class AppContext {
      */
     private FileSizeService fileSizeService;
 
+    /**
+     * File processing service.
+     */
+    private FileProcessingService fileProcessingService;
+
     /**
      * Asynchronous executors.
      */
@@ -108,6 +127,11 @@ public class AppContext {
         inboxService.startAsync();
         inboxService.awaitRunning();
 
+        // Start file processing service
+        fileProcessingService = new FileProcessingService();
+        fileProcessingService.startAsync();
+        fileProcessingService.awaitRunning();
+
         // Start file size service
         fileSizeService = new FileSizeService();
         fileSizeService.startAsync();
@@ -151,7 +175,7 @@ public class AppContext {
         asyncEventBus.register(new DocumentCreatedAsyncListener());
         asyncEventBus.register(new DocumentUpdatedAsyncListener());
         asyncEventBus.register(new DocumentDeletedAsyncListener());
-        asyncEventBus.register(new RebuildIndexAsyncListener());
+        asyncEventBus.register(new RebuildIndexAsyncListener(indexRebuildProgress));
         asyncEventBus.register(new AclCreatedAsyncListener());
         asyncEventBus.register(new AclDeletedAsyncListener());
         asyncEventBus.register(new WebhookAsyncListener());
@@ -202,7 +226,10 @@ public class AppContext {
         for (ThreadPoolExecutor executor : asyncExecutorList) {
             queueSize += executor.getTaskCount() - executor.getCompletedTaskCount();
         }
-        return queueSize;
+        for (FileProcessingLane lane : FileProcessingLane.values()) {
+            queueSize += fileProcessingService.getQueuedCount(lane);
+        }
+        return queueSize + fileProcessingService.getActiveCount();
     }
 
     public EventBus getAsyncEventBus() {
@@ -217,6 +244,14 @@ public class AppContext {
         return indexingHandler;
     }
 
+    public IndexRebuildProgress getIndexRebuildProgress() {
+        return indexRebuildProgress;
+    }
+
+    public ThumbnailCache getThumbnailCache() {
+        return thumbnailCache;
+    }
+
     public InboxService getInboxService() {
         return inboxService;
     }
@@ -225,6 +260,10 @@ public class AppContext {
         return fileService;
     }
 
+    public FileProcessingService getFileProcessingService() {
+        return fileProcessingService;
+    }
+
     public void shutDown() {
         for (ExecutorService executor : asyncExecutorList) {
             // Shutdown executor, don't accept any more tasks (can cause error with nested events)
@@ -253,6 +292,11 @@ public class AppContext {
             fileSizeService.stopAsync();
         }
 
+        if (fileProcessingService != null) {
+            fileProcessingService.stopAsync();
+            fileProcessingService.awaitTerminated();
+        }
+
         instance = null;
     }
 }
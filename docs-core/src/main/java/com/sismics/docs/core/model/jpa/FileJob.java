@@ -0,0 +1,193 @@
+package com.sismics.docs.core.model.jpa;
+
+import com.google.common.base.MoreObjects;
+import com.sismics.docs.core.constant.FileJobState;
+import com.sismics.docs.core.constant.FileProcessingLane;
+
+import jakarta.persistence.*;
+import java.util.Date;
+
+/**
+ * File processing job.
+ * A job exists from the file creation or update until its processing is complete.
+ */
+@Entity
+@Table(name = "T_FILE_JOB")
+public class FileJob {
+    /**
+     * Job ID.
+     */
+    @Id
+    @Column(name = "FJB_ID_C", length = 36)
+    private String id;
+
+    /**
+     * File ID.
+     */
+    @Column(name = "FJB_IDFILE_C", nullable = false, length = 36)
+    private String fileId;
+
+    /**
+     * User ID who fired the processing.
+     */
+    @Column(name = "FJB_IDUSER_C", nullable = false, length = 36)
+    private String userId;
+
+    /**
+     * Language of the file.
+     */
+    @Column(name = "FJB_LANGUAGE_C", length = 7)
+    private String language;
+
+    /**
+     * True if the file was just created.
+     */
+    @Column(name = "FJB_FILECREATED_B", nullable = false)
+    private boolean fileCreated;
+
+    /**
+     * Processing lane.
+     */
+    @Column(name = "FJB_LANE_C", nullable = false, length = 20)
+    @Enumerated(EnumType.STRING)
+    private FileProcessingLane lane;
+
+    /**
+     * State.
+     */
+    @Column(name = "FJB_STATE_C", nullable = false, length = 20)
+    @Enumerated(EnumType.STRING)
+    private FileJobState state;
+
+    /**
+     * Number of processing attempts.
+     */
+    @Column(name = "FJB_ATTEMPT_N", nullable = false)
+    private int attempt;
+
+    /**
+     * Node holding the lease.
+     */
+    @Column(name = "FJB_LEASEOWNER_C", length = 36)
+    private String leaseOwner;
+
+    /**
+     * Lease expiration date.
+     */
+    @Column(name = "FJB_LEASEEXPIREDATE_D")
+    private Date leaseExpireDate;
+
+    /**
+     * Creation date.
+     */
+    @Column(name = "FJB_CREATEDATE_D", nullable = false)
+    private Date createDate;
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getFileId() {
+        return fileId;
+    }
+
+    public FileJob setFileId(String fileId) {
+        this.fileId = fileId;
+        return this;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public FileJob setUserId(String userId) {
+        this.userId = userId;
+        return this;
+    }
+
+    public String getLanguage() {
+        return language;
+    }
+
+    public FileJob setLanguage(String language) {
+        this.language = language;
+        return this;
+    }
+
+    public boolean isFileCreated() {
+        return fileCreated;
+    }
+
+    public FileJob setFileCreated(boolean fileCreated) {
+        this.fileCreated = fileCreated;
+        return this;
+    }
+
+    public FileProcessingLane getLane() {
+        return lane;
+    }
+
+    public FileJob setLane(FileProcessingLane lane) {
+        this.lane = lane;
+        return this;
+    }
+
+    public FileJobState getState() {
+        return state;
+    }
+
+    public FileJob setState(FileJobState state) {
+        this.state = state;
+        return this;
+    }
+
+    public int getAttempt() {
+        return attempt;
+    }
+
+    public FileJob setAttempt(int attempt) {
+        this.attempt = attempt;
+        return this;
+    }
+
+    public String getLeaseOwner() {
+        return leaseOwner;
+    }
+
+    public FileJob setLeaseOwner(String leaseOwner) {
+        this.leaseOwner = leaseOwner;
+        return this;
+    }
+
+    public Date getLeaseExpireDate() {
+        return leaseExpireDate;
+    }
+
+    public FileJob setLeaseExpireDate(Date leaseExpireDate) {
+        this.leaseExpireDate = leaseExpireDate;
+        return this;
+    }
+
+    public Date getCreateDate() {
+        return createDate;
+    }
+
+    public void setCreateDate(Date createDate) {
+        this.createDate = createDate;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("id", id)
+                .add("fileId", fileId)
+                .add("lane", lane)
+                .add("state", state)
+                .add("attempt", attempt)
+                .toString();
+    }
+}
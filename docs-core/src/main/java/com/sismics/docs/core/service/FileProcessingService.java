@@ -0,0 +1,452 @@
+package com.sismics.docs.core.service;
+
+import com.google.common.base.Strings;
+import com.google.common.util.concurrent.AbstractScheduledService;
+import com.sismics.docs.core.constant.Constants;
+import com.sismics.docs.core.constant.FileProcessingLane;
+import com.sismics.docs.core.dao.FileDao;
+import com.sismics.docs.core.dao.FileJobDao;
+import com.sismics.docs.core.dao.UserDao;
+import com.sismics.docs.core.event.FileCreatedAsyncEvent;
+import com.sismics.docs.core.event.FileEvent;
+import com.sismics.docs.core.event.FileUpdatedAsyncEvent;
+import com.sismics.docs.core.model.context.AppContext;
+import com.sismics.docs.core.model.jpa.File;
+import com.sismics.docs.core.model.jpa.FileJob;
+import com.sismics.docs.core.model.jpa.User;
+import com.sismics.docs.core.util.DirectoryUtil;
+import com.sismics.docs.core.util.EncryptionUtil;
+import com.sismics.docs.core.util.FileUtil;
+import com.sismics.docs.core.util.TransactionUtil;
+import com.sismics.util.EnvironmentUtil;
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * File processing service.
+ * Files are processed by a dedicated pool of threads, separated from the asynchronous events,
+ * in the order of their lane priority, then in submission order.
+ * Each lane has a maximum number of waiting files, the processings submitted beyond are refused.
+ * Each processing is backed by a job in database, leased by the node processing it.
+ * Pending jobs and jobs whose lease expired (the node stopped) are resumed from the stored files.
+ */
+public class FileProcessingService extends AbstractScheduledService {
+    /**
+     * Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(FileProcessingService.class);
+
+    /**
+     * Default maximum number of waiting files in each lane.
+     */
+    private static final int DEFAULT_QUEUE_SIZE = 100;
+
+    /**
+     * Duration of a job lease in minutes, renewed every minute while the node processes the job.
+     */
+    private static final int LEASE_DURATION = 5;
+
+    /**
+     * Number of processing attempts before a job is given up.
+     */
+    private static final int MAX_ATTEMPTS = 3;
+
+    /**
+     * ID of this node, holding the leases of the jobs it processes.
+     */
+    private final String nodeId = UUID.randomUUID().toString();
+
+    /**
+     * Jobs leased by this node and not yet processed.
+     */
+    private final Set<String> leasedJobIdSet = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Processing executor.
+     */
+    private ThreadPoolExecutor executor;
+
+    /**
+     * OCR executor, shared by all the processed files so the OCR processes don't oversubscribe the CPU.
+     */
+    private ThreadPoolExecutor ocrExecutor;
+
+    /**
+     * Number of pages OCR-ized concurrently.
+     */
+    private final int ocrThreadCount = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Maximum number of waiting files in each lane.
+     */
+    private final int queueSize = getConfiguredQueueSize();
+
+    /**
+     * Number of waiting files by lane.
+     */
+    private final Map<FileProcessingLane, AtomicInteger> queuedCountMap = new EnumMap<>(FileProcessingLane.class);
+
+    /**
+     * Submission sequence, to keep the submission order in a lane.
+     */
+    private final AtomicLong sequence = new AtomicLong();
+
+    public FileProcessingService() {
+        for (FileProcessingLane lane : FileProcessingLane.values()) {
+            queuedCountMap.put(lane, new AtomicInteger());
+        }
+    }
+
+    @Override
+    protected void startUp() {
+        int threadCount = getConfiguredThreadCount();
+        log.info("File processing service starting up with " + threadCount + " threads");
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threadCount, threadCount,
+                0L, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "file-processing-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        AtomicInteger ocrThreadNumber = new AtomicInteger();
+        ocrExecutor = new ThreadPoolExecutor(ocrThreadCount, ocrThreadCount,
+                0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "ocr-" + ocrThreadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    @Override
+    protected void shutDown() throws Exception {
+        log.info("File processing service shutting down");
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+        ocrExecutor.shutdown();
+        ocrExecutor.awaitTermination(1, TimeUnit.MINUTES);
+    }
+
+    @Override
+    protected void runOneIteration() {
+        try {
+            if (!leasedJobIdSet.isEmpty()) {
+                List<String> jobIdList = new ArrayList<>(leasedJobIdSet);
+                TransactionUtil.handle(() -> new FileJobDao().renewLeases(nodeId, jobIdList, getLeaseExpireDate()));
+            }
+            resumeJobs();
+        } catch (Throwable e) {
+            log.error("Error resuming the file processing jobs", e);
+        }
+    }
+
+    @Override
+    protected Scheduler scheduler() {
+        return Scheduler.newFixedDelaySchedule(0, 1, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Take a job for this node.
+     *
+     * @param jobId Job ID
+     * @return True if the job is taken, false if another node or event already took it
+     */
+    public boolean leaseJob(String jobId) {
+        AtomicBoolean leased = new AtomicBoolean();
+        TransactionUtil.handle(() -> leased.set(new FileJobDao().lease(jobId, nodeId, getLeaseExpireDate())));
+        if (leased.get()) {
+            leasedJobIdSet.add(jobId);
+        }
+        return leased.get();
+    }
+
+    /**
+     * Give back a job taken for a processing which has been refused, it will be resumed later.
+     *
+     * @param jobId Job ID
+     */
+    public void postponeJob(String jobId) {
+        if (jobId != null) {
+            leasedJobIdSet.remove(jobId);
+            TransactionUtil.handle(() -> new FileJobDao().release(jobId, nodeId));
+        }
+    }
+
+    /**
+     * Stop renewing the lease of a job, after its processing.
+     *
+     * @param jobId Job ID
+     */
+    public void releaseJob(String jobId) {
+        if (jobId != null) {
+            leasedJobIdSet.remove(jobId);
+        }
+    }
+
+    /**
+     * Resume the pending jobs not raised by an event (the transaction committed but the node stopped)
+     * and the jobs abandoned by a stopped node.
+     * The unencrypted files are decrypted again from the storage.
+     */
+    private void resumeJobs() {
+        List<FileJob> fileJobList = new ArrayList<>();
+        TransactionUtil.handle(() -> fileJobList.addAll(new FileJobDao().findResumable(
+                new DateTime().minusMinutes(1).toDate(), queueSize)));
+
+        for (FileJob fileJob : fileJobList) {
+            if (isFull(fileJob.getLane())) {
+                continue;
+            }
+
+            AtomicReference<FileEvent> event = new AtomicReference<>();
+            TransactionUtil.handle(() -> {
+                FileJobDao fileJobDao = new FileJobDao();
+                File file = new FileDao().getActiveById(fileJob.getFileId());
+                User user = file == null ? null : new UserDao().getById(file.getUserId());
+                if (file == null || user == null) {
+                    // The file or its creator has been deleted since
+                    fileJobDao.delete(fileJob.getId());
+                    return;
+                }
+                if (fileJob.getAttempt() >= MAX_ATTEMPTS) {
+                    log.error("Giving up processing after " + fileJob.getAttempt() + " attempts: " + fileJob);
+                    fileJobDao.fail(fileJob.getId());
+                    return;
+                }
+
+                Path unencryptedFile;
+                try {
+                    Path storedFile = DirectoryUtil.getStorageDirectory().resolve(file.getId());
+                    unencryptedFile = EncryptionUtil.decryptFile(storedFile, user.getPrivateKey());
+                } catch (Exception e) {
+                    log.error("Unable to decrypt the file to resume: " + fileJob, e);
+                    fileJobDao.fail(fileJob.getId());
+                    return;
+                }
+
+                FileEvent fileEvent = fileJob.isFileCreated() ? new FileCreatedAsyncEvent() : new FileUpdatedAsyncEvent();
+                fileEvent.setUserId(fileJob.getUserId());
+                fileEvent.setLanguage(fileJob.getLanguage());
+                fileEvent.setFileId(fileJob.getFileId());
+                fileEvent.setUnencryptedFile(unencryptedFile);
+                fileEvent.setLane(fileJob.getLane());
+                fileEvent.setJobId(fileJob.getId());
+                event.set(fileEvent);
+            });
+
+            if (event.get() == null) {
+                FileUtil.endProcessingFile(fileJob.getFileId());
+            } else {
+                log.info("Resuming file processing job: " + fileJob);
+                FileUtil.startProcessingFile(fileJob.getFileId());
+                AppContext.getInstance().getAsyncEventBus().post(event.get());
+            }
+        }
+    }
+
+    /**
+     * Returns the expiration date of a lease taken or renewed now.
+     *
+     * @return Lease expiration date
+     */
+    private static Date getLeaseExpireDate() {
+        return new DateTime().plusMinutes(LEASE_DURATION).toDate();
+    }
+
+    /**
+     * Submit a file processing, refused if its lane has reached its maximum number of waiting files.
+     *
+     * @param lane Processing lane
+     * @param runnable Processing
+     * @return True if the processing is accepted
+     */
+    public boolean submit(FileProcessingLane lane, Runnable runnable) {
+        if (EnvironmentUtil.isUnitTest()) {
+            // Process synchronously like the events in unit tests
+            runnable.run();
+            return true;
+        }
+
+        AtomicInteger queuedCount = queuedCountMap.get(lane);
+        if (queuedCount.getAndUpdate(count -> count < queueSize ? count + 1 : count) >= queueSize) {
+            return false;
+        }
+        executor.execute(new Task(lane, sequence.incrementAndGet(), runnable));
+        return true;
+    }
+
+    /**
+     * Submit the OCR of a page.
+     *
+     * @param callable OCR returning the page content
+     * @return Page content
+     */
+    public Future<String> submitOcr(Callable<String> callable) {
+        return ocrExecutor.submit(callable);
+    }
+
+    /**
+     * Returns the number of pages OCR-ized concurrently.
+     *
+     * @return Number of OCR threads
+     */
+    public int getOcrThreadCount() {
+        return ocrThreadCount;
+    }
+
+    /**
+     * Returns true if a lane has reached its maximum number of waiting files.
+     *
+     * @param lane Processing lane
+     * @return True if the lane is full
+     */
+    public boolean isFull(FileProcessingLane lane) {
+        return getQueuedCount(lane) >= queueSize;
+    }
+
+    /**
+     * Wait until a lane can accept a new file.
+     *
+     * @param lane Processing lane
+     * @throws InterruptedException e
+     */
+    public void awaitCapacity(FileProcessingLane lane) throws InterruptedException {
+        synchronized (queuedCountMap) {
+            while (isFull(lane)) {
+                queuedCountMap.wait();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of files waiting to be processed in a lane.
+     *
+     * @param lane Processing lane
+     * @return Number of waiting files
+     */
+    public int getQueuedCount(FileProcessingLane lane) {
+        return queuedCountMap.get(lane).get();
+    }
+
+    /**
+     * Returns the number of files being processed.
+     *
+     * @return Number of files being processed
+     */
+    public int getActiveCount() {
+        return executor == null ? 0 : executor.getActiveCount();
+    }
+
+    /**
+     * Returns the maximum number of waiting files in each lane.
+     *
+     * @return Maximum number of waiting files
+     */
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    /**
+     * Returns the number of files processed concurrently.
+     *
+     * @return Number of threads
+     */
+    private static int getConfiguredThreadCount() {
+        int defaultThreadCount = Math.max(Runtime.getRuntime().availableProcessors() / 2, 1);
+        String envThreadCount = System.getenv(Constants.FILE_PROCESSING_THREADS_ENV);
+        if (!Strings.isNullOrEmpty(envThreadCount)) {
+            try {
+                int threadCount = Integer.parseInt(envThreadCount);
+                if (threadCount > 0) {
+                    return threadCount;
+                }
+            } catch (NumberFormatException e) {
+                // NOP
+            }
+            log.warn(Constants.FILE_PROCESSING_THREADS_ENV + " needs to be a strictly positive number. Falling back to " + defaultThreadCount + ".");
+        }
+        return defaultThreadCount;
+    }
+
+    /**
+     * Returns the maximum number of waiting files in each lane.
+     *
+     * @return Maximum number of waiting files
+     */
+    private static int getConfiguredQueueSize() {
+        String envQueueSize = System.getenv(Constants.FILE_PROCESSING_QUEUE_SIZE_ENV);
+        if (!Strings.isNullOrEmpty(envQueueSize)) {
+            try {
+                int queueSize = Integer.parseInt(envQueueSize);
+                if (queueSize > 0) {
+                    return queueSize;
+                }
+            } catch (NumberFormatException e) {
+                // NOP
+            }
+            log.warn(Constants.FILE_PROCESSING_QUEUE_SIZE_ENV + " needs to be a strictly positive number. Falling back to " + DEFAULT_QUEUE_SIZE + ".");
+        }
+        return DEFAULT_QUEUE_SIZE;
+    }
+
+    /**
+     * File processing task, ordered by lane then by submission.
+     */
+    private class Task implements Runnable, Comparable<Task> {
+        private final FileProcessingLane lane;
+
+        private final long sequence;
+
+        private final Runnable runnable;
+
+        private Task(FileProcessingLane lane, long sequence, Runnable runnable) {
+            this.lane = lane;
+            this.sequence = sequence;
+            this.runnable = runnable;
+        }
+
+        @Override
+        public void run() {
+            queuedCountMap.get(lane).decrementAndGet();
+            synchronized (queuedCountMap) {
+                queuedCountMap.notifyAll();
+            }
+
+            try {
+                runnable.run();
+            } catch (Throwable e) {
+                log.error("Error processing a file", e);
+            }
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            int result = lane.compareTo(other.lane);
+            return result != 0 ? result : Long.compare(sequence, other.sequence);
+        }
+    }
+}
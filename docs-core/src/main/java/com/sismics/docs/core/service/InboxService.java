@@ -2,10 +2,12 @@ package com.sismics.docs.core.service;
 
 import com.google.common.util.concurrent.AbstractScheduledService;
 import com.sismics.docs.core.constant.ConfigType;
+import com.sismics.docs.core.constant.FileProcessingLane;
 import com.sismics.docs.core.dao.TagDao;
 import com.sismics.docs.core.dao.criteria.TagCriteria;
 import com.sismics.docs.core.dao.dto.TagDto;
 import com.sismics.docs.core.event.DocumentCreatedAsyncEvent;
+import com.sismics.docs.core.model.context.AppContext;
 import com.sismics.docs.core.model.jpa.Document;
 import com.sismics.docs.core.model.jpa.Tag;
 import com.sismics.docs.core.util.ConfigUtil;
@@ -87,7 +89,10 @@ public class InboxService extends AbstractScheduledService {
                 inbox = openInbox();
                 Message[] messages = inbox.search(new FlagTerm(new Flags(Flags.Flag.SEEN), false));
                 log.info(messages.length + " messages found");
+                FileProcessingService fileProcessingService = AppContext.getInstance().getFileProcessingService();
                 for (Message message : messages) {
+                    // Too many files waiting to be processed, wait for the next messages to be processed
+                    fileProcessingService.awaitCapacity(FileProcessingLane.BATCH);
                     importMessage(message, tagsNameToId);
                     lastSyncMessageCount++;
                 }
@@ -260,7 +265,7 @@ public class InboxService extends AbstractScheduledService {
         // Add files to the document
         for (EmailUtil.FileContent fileContent : mailContent.getFileContentList()) {
             FileUtil.createFile(fileContent.getName(), null, fileContent.getFile(), fileContent.getSize(),
-                    document.getLanguage(), "admin", document.getId());
+                    document.getLanguage(), "admin", document.getId(), FileProcessingLane.BATCH);
         }
 
         if (ConfigUtil.getConfigBooleanValue(ConfigType.INBOX_DELETE_IMPORTED)) {
@@ -2,15 +2,67 @@ package com.sismics.docs.core.util;
 
 import com.sismics.docs.core.constant.ConfigType;
 import com.sismics.docs.core.dao.ConfigDao;
-import com.sismics.docs.core.model.jpa.Config;
+import com.sismics.util.context.ThreadLocalContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
 import java.util.ResourceBundle;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Configuration parameter utilities.
+ * The parameters are read from an immutable snapshot of the database, reloaded in background every minute
+ * for the other nodes' changes, and updated by ConfigDao for the local ones once committed.
  *
  */
 public class ConfigUtil {
+    /**
+     * Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(ConfigUtil.class);
+
+    /**
+     * Delay after which the snapshot is reloaded from the database.
+     */
+    private static final long SNAPSHOT_DELAY = TimeUnit.MINUTES.toMillis(1);
+
+    /**
+     * Current snapshot, null until loaded.
+     */
+    private static volatile Snapshot snapshot;
+
+    /**
+     * Version of the snapshot, incremented on each local update.
+     * A snapshot loaded concurrently with an update is not installed, as it may be missing the updated value.
+     */
+    private static long version;
+
+    /**
+     * Lock held while loading the snapshot, a single load runs at a time.
+     */
+    private static final Object loadLock = new Object();
+
+    /**
+     * True while the snapshot is reloaded in background.
+     */
+    private static final AtomicBoolean reloading = new AtomicBoolean();
+
+    /**
+     * Executor reloading the snapshot, outside of the reading threads and their database connection.
+     */
+    private static final ExecutorService reloadExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "config-reload");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     /**
      * Returns the textual value of a configuration parameter.
      *
@@ -19,12 +71,126 @@ public class ConfigUtil {
      * @throws IllegalStateException Configuration parameter undefined
      */
     public static String getConfigStringValue(ConfigType configType) {
-        ConfigDao configDao = new ConfigDao();
-        Config config = configDao.getById(configType);
-        if (config == null) {
+        Snapshot snapshot = getSnapshot();
+        if (snapshot == null || !snapshot.configMap.containsKey(configType)) {
             throw new IllegalStateException("Config parameter not found: " + configType);
         }
-        return config.getValue();
+        return snapshot.configMap.get(configType);
+    }
+
+    /**
+     * Returns the textual value of a configuration parameter with a default value.
+     *
+     * @param configType Type of the configuration parameter
+     * @param defaultValue Default value to return if the configuration parameter is undefined
+     * @return Textual value of the configuration parameter
+     */
+    public static String getConfigStringValue(ConfigType configType, String defaultValue) {
+        try {
+            return getConfigStringValue(configType);
+        } catch (IllegalStateException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Update a configuration parameter in the snapshot.
+     * Must be called after the new value is committed.
+     *
+     * @param configType Type of the configuration parameter
+     * @param value Value of the configuration parameter
+     */
+    public static synchronized void update(ConfigType configType, String value) {
+        version++;
+        Snapshot current = snapshot;
+        if (current != null) {
+            Map<ConfigType, String> configMap = new EnumMap<>(ConfigType.class);
+            configMap.putAll(current.configMap);
+            configMap.put(configType, value);
+            snapshot = new Snapshot(configMap, current.loadDate);
+        }
+    }
+
+    /**
+     * Returns the current snapshot, loading it from the database if needed.
+     * An outdated snapshot is returned while a single background thread reloads it.
+     * Outside of a transactional context, a snapshot is never loaded for the first time.
+     *
+     * @return Snapshot, null if never loaded
+     */
+    private static Snapshot getSnapshot() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            if (ThreadLocalContext.get().getEntityManager() == null) {
+                return null;
+            }
+            synchronized (loadLock) {
+                if (snapshot == null) {
+                    load();
+                }
+            }
+            return snapshot;
+        }
+
+        if (System.currentTimeMillis() - current.loadDate >= SNAPSHOT_DELAY && reloading.compareAndSet(false, true)) {
+            try {
+                reloadExecutor.execute(() -> {
+                    try {
+                        synchronized (loadLock) {
+                            load();
+                        }
+                    } finally {
+                        reloading.set(false);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                reloading.set(false);
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Load the snapshot from the database.
+     * On error, the previous snapshot is kept until the next reload.
+     */
+    private static void load() {
+        while (true) {
+            long loadVersion;
+            synchronized (ConfigUtil.class) {
+                loadVersion = version;
+            }
+            Map<ConfigType, String> configMap;
+            try {
+                configMap = new ConfigDao().findAllValues();
+            } catch (Exception e) {
+                log.error("Error loading the configuration parameters", e);
+                synchronized (ConfigUtil.class) {
+                    Snapshot current = snapshot;
+                    if (current != null) {
+                        snapshot = new Snapshot(current.configMap, System.currentTimeMillis());
+                    }
+                }
+                return;
+            }
+            synchronized (ConfigUtil.class) {
+                if (version == loadVersion) {
+                    snapshot = new Snapshot(configMap, System.currentTimeMillis());
+                    return;
+                }
+            }
+            // A parameter has been updated during the loading, start over
+        }
+    }
+
+    /**
+     * Mark the snapshot as outdated, to be reloaded on the next read.
+     */
+    static synchronized void expire() {
+        Snapshot current = snapshot;
+        if (current != null) {
+            snapshot = new Snapshot(current.configMap, 0);
+        }
     }
 
     /**
@@ -88,4 +254,18 @@ public class ConfigUtil {
             return defaultValue;
         }
     }
+
+    /**
+     * Configuration parameters loaded at a given date.
+     */
+    private static class Snapshot {
+        private final Map<ConfigType, String> configMap;
+
+        private final long loadDate;
+
+        private Snapshot(Map<ConfigType, String> configMap, long loadDate) {
+            this.configMap = Collections.unmodifiableMap(configMap);
+            this.loadDate = loadDate;
+        }
+    }
 }
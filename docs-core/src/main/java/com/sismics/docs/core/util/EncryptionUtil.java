@@ -1,6 +1,10 @@
 package com.sismics.docs.core.util;
 
 import com.google.common.base.Strings;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.io.ByteStreams;
 import com.sismics.docs.core.model.context.AppContext;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 
@@ -8,7 +12,9 @@ import javax.crypto.Cipher;
 import javax.crypto.CipherInputStream;
 import javax.crypto.SecretKey;
 import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
 import java.io.InputStream;
 import java.math.BigInteger;
 import java.nio.file.Files;
@@ -17,6 +23,8 @@ import java.nio.file.StandardCopyOption;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.security.Security;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Encryption utilities.
@@ -28,6 +36,27 @@ public class EncryptionUtil {
      * Salt.
      */
     private static final String SALT = "LEpxZmm2SMu2PeKzPNrar2rhVAS6LrrgvXKeL9uyXC4vgKHg";
+
+    /**
+     * AES block size, the CTR counter is incremented for each block.
+     */
+    private static final int BLOCK_SIZE = 16;
+
+    /**
+     * Secret keys derived from the users private keys.
+     * The derivation is slow by design, and was done for each encrypted or decrypted stream.
+     */
+    private static final LoadingCache<String, SecretKey> secretKeyCache = CacheBuilder.newBuilder()
+            .maximumSize(1000)
+            .expireAfterAccess(1, TimeUnit.HOURS)
+            .build(new CacheLoader<String, SecretKey>() {
+                @Override
+                public SecretKey load(String privateKey) throws Exception {
+                    PBEKeySpec keySpec = new PBEKeySpec(privateKey.toCharArray(), SALT.getBytes(), 2000, 256);
+                    SecretKeyFactory skf = SecretKeyFactory.getInstance("PBEWITHSHA256AND256BITAES-CBC-BC");
+                    return skf.generateSecret(keySpec);
+                }
+            });
     
     static {
         // Initialize Bouncy Castle provider
@@ -61,6 +90,24 @@ public class EncryptionUtil {
         return new CipherInputStream(is, getCipher(privateKey, Cipher.DECRYPT_MODE));
     }
 
+    /**
+     * Decrypt an InputStream from an offset using the specified private key.
+     * The encrypted stream is skipped to the offset without decrypting the previous data.
+     *
+     * @param is InputStream to decrypt, at the beginning of the encrypted data
+     * @param privateKey Private key
+     * @param offset Offset in the decrypted data
+     * @return Decrypted stream starting at the offset
+     * @throws Exception e
+     */
+    public static InputStream decryptInputStream(InputStream is, String privateKey, long offset) throws Exception {
+        long blockOffset = offset - offset % BLOCK_SIZE;
+        ByteStreams.skipFully(is, blockOffset);
+        InputStream decryptedInputStream = new CipherInputStream(is, getCipher(privateKey, Cipher.DECRYPT_MODE, blockOffset / BLOCK_SIZE));
+        ByteStreams.skipFully(decryptedInputStream, offset - blockOffset);
+        return decryptedInputStream;
+    }
+
     /**
      * Decrypt a file to a temporary file using the specified private key.
      *
@@ -105,11 +152,46 @@ public class EncryptionUtil {
      * @throws Exception e
      */
     private static Cipher getCipher(String privateKey, int mode) throws Exception {
-        PBEKeySpec keySpec = new PBEKeySpec(privateKey.toCharArray(), SALT.getBytes(), 2000, 256);
-        SecretKeyFactory skf = SecretKeyFactory.getInstance("PBEWITHSHA256AND256BITAES-CBC-BC");
-        SecretKey desKey = skf.generateSecret(keySpec);
+        return getCipher(privateKey, mode, 0);
+    }
+
+    /**
+     * Initialize a Cipher starting at a given block.
+     *
+     * @param privateKey Private key
+     * @param mode Mode (encrypt or decrypt)
+     * @param block Index of the first block to process
+     * @return Cipher
+     * @throws Exception e
+     */
+    private static Cipher getCipher(String privateKey, int mode, long block) throws Exception {
+        SecretKey secretKey = getSecretKey(privateKey);
         Cipher cipher = Cipher.getInstance("AES/CTR/NOPADDING");
-        cipher.init(mode, desKey);
+        cipher.init(mode, secretKey);
+        if (block > 0) {
+            // The counter of a block is the initial counter plus the block index
+            byte[] iv = cipher.getIV();
+            byte[] counter = new BigInteger(1, iv).add(BigInteger.valueOf(block)).toByteArray();
+            byte[] blockIv = new byte[iv.length];
+            int length = Math.min(counter.length, iv.length);
+            System.arraycopy(counter, counter.length - length, blockIv, iv.length - length, length);
+            cipher.init(mode, new SecretKeySpec(secretKey.getEncoded(), "AES"), new IvParameterSpec(blockIv));
+        }
         return cipher;
     }
+
+    /**
+     * Returns the secret key derived from a private key.
+     *
+     * @param privateKey Private key
+     * @return Secret key
+     * @throws Exception e
+     */
+    private static SecretKey getSecretKey(String privateKey) throws Exception {
+        try {
+            return secretKeyCache.get(privateKey);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+    }
 }
@@ -4,14 +4,18 @@ import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
 import com.google.common.io.CharStreams;
 import com.sismics.docs.core.constant.Constants;
+import com.sismics.docs.core.constant.FileProcessingLane;
 import com.sismics.docs.core.dao.FileDao;
+import com.sismics.docs.core.dao.FileJobDao;
 import com.sismics.docs.core.dao.UserDao;
 import com.sismics.docs.core.event.DocumentUpdatedAsyncEvent;
 import com.sismics.docs.core.event.FileCreatedAsyncEvent;
-import com.sismics.docs.core.model.context.AppContext;
+import com.sismics.docs.core.event.FileEvent;
 import com.sismics.docs.core.model.jpa.File;
+import com.sismics.docs.core.model.jpa.FileJob;
 import com.sismics.docs.core.model.jpa.User;
 import com.sismics.util.ImageDeskew;
+import com.sismics.util.ImageUtil;
 import com.sismics.util.Scalr;
 import com.sismics.util.context.ThreadLocalContext;
 import com.sismics.util.io.InputStreamReaderThread;
@@ -25,11 +29,12 @@ import org.slf4j.LoggerFactory;
 
 import javax.crypto.Cipher;
 import javax.crypto.CipherInputStream;
-import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -66,17 +71,27 @@ public class FileUtil {
         ImageDeskew imageDeskew = new ImageDeskew(resizedImage);
         BufferedImage deskewedImage = Scalr.rotate(resizedImage, - imageDeskew.getSkewAngle(), Scalr.OP_ANTIALIAS, Scalr.OP_GRAYSCALE);
         resizedImage.flush();
-        Path tmpFile = AppContext.getInstance().getFileService().createTemporaryFile();
-        ImageIO.write(deskewedImage, "tiff", tmpFile.toFile());
 
-        List<String> result = Lists.newLinkedList(Arrays.asList("tesseract", tmpFile.toAbsolutePath().toString(), "stdout", "-l", language));
+        List<String> result = Lists.newLinkedList(Arrays.asList("tesseract", "stdin", "stdout", "-l", language));
         ProcessBuilder pb = new ProcessBuilder(result);
+        // Pages are OCR-ized in parallel, tesseract must not start its own threads for each one
+        pb.environment().putIfAbsent("OMP_THREAD_LIMIT", "1");
         Process process = pb.start();
 
         // Consume the process error stream
         final String commandName = pb.command().get(0);
         new InputStreamReaderThread(process.getErrorStream(), commandName).start();
 
+        // Send the image as an uncompressed PNM while the output is consumed, without going through the disk
+        Thread writerThread = new Thread(() -> {
+            try (OutputStream os = new BufferedOutputStream(process.getOutputStream())) {
+                ImageUtil.writePgm(deskewedImage, os);
+            } catch (IOException e) {
+                log.warn("Unable to send the image to " + commandName, e);
+            }
+        }, commandName + " OutputStreamWriter thread");
+        writerThread.start();
+
         // Consume the data as text
         try (InputStream is = process.getInputStream()) {
             return CharStreams.toString(new InputStreamReader(is, StandardCharsets.UTF_8));
@@ -118,6 +133,25 @@ public class FileUtil {
      * @throws Exception e
      */
     public static String createFile(String name, String previousFileId, Path unencryptedFile, long fileSize, String language, String userId, String documentId) throws Exception {
+        return createFile(name, previousFileId, unencryptedFile, fileSize, language, userId, documentId, FileProcessingLane.INTERACTIVE);
+    }
+
+    /**
+     * Create a new file.
+     *
+     * @param name File name, can be null
+     * @param previousFileId ID of the previous version of the file, if the new file is a new version
+     * @param unencryptedFile Path to the unencrypted file
+     * @param fileSize File size
+     * @param language File language, can be null if associated to no document
+     * @param userId User ID creating the file
+     * @param documentId Associated document ID or null if no document
+     * @param lane Processing lane
+     * @return File ID
+     * @throws Exception e
+     */
+    public static String createFile(String name, String previousFileId, Path unencryptedFile, long fileSize, String language, String userId, String documentId,
+                                    FileProcessingLane lane) throws Exception {
         // Validate mime type
         String mimeType;
         try {
@@ -197,13 +231,13 @@ public class FileUtil {
         userDao.updateQuota(user);
 
         // Raise a new file created event and document updated event if we have a document
-        startProcessingFile(fileId);
         FileCreatedAsyncEvent fileCreatedAsyncEvent = new FileCreatedAsyncEvent();
         fileCreatedAsyncEvent.setUserId(userId);
         fileCreatedAsyncEvent.setLanguage(language);
         fileCreatedAsyncEvent.setFileId(file.getId());
         fileCreatedAsyncEvent.setUnencryptedFile(unencryptedFile);
-        ThreadLocalContext.get().addAsyncEvent(fileCreatedAsyncEvent);
+        fileCreatedAsyncEvent.setLane(lane);
+        startProcessingFile(fileCreatedAsyncEvent);
 
         if (documentId != null) {
             DocumentUpdatedAsyncEvent documentUpdatedAsyncEvent = new DocumentUpdatedAsyncEvent();
@@ -217,6 +251,25 @@ public class FileUtil {
 
     /**
      * Start processing a file.
+     * A processing job is saved in the current transaction, so the processing is resumed
+     * if the server stops before its end. The event is raised after the transaction is committed.
+     *
+     * @param event File created or updated event
+     */
+    public static void startProcessingFile(FileEvent event) {
+        FileJob fileJob = new FileJob()
+                .setFileId(event.getFileId())
+                .setUserId(event.getUserId())
+                .setLanguage(event.getLanguage())
+                .setFileCreated(event instanceof FileCreatedAsyncEvent)
+                .setLane(event.getLane());
+        event.setJobId(new FileJobDao().create(fileJob));
+        startProcessingFile(event.getFileId());
+        ThreadLocalContext.get().addAsyncEvent(event);
+    }
+
+    /**
+     * Mark a file as processing on this node.
      *
      * @param fileId File ID
      */
@@ -0,0 +1,119 @@
+package com.sismics.docs.core.util;
+
+import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.io.ByteStreams;
+import com.sismics.docs.core.constant.Constants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Cache of the decrypted file variations ("web" and "thumb").
+ * The cache is bounded by the total size of the cached images, the least recently used are evicted first.
+ * An entry is only used if the stored file has not been modified since it was cached.
+ */
+public class ThumbnailCache {
+    /**
+     * Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(ThumbnailCache.class);
+
+    /**
+     * Default maximum size of the cache in megabytes.
+     */
+    private static final int DEFAULT_SIZE = 64;
+
+    /**
+     * File variations cached.
+     */
+    private static final String[] SIZES = { "web", "thumb" };
+
+    /**
+     * Decrypted images by stored file name.
+     */
+    private final Cache<String, CachedImage> cache;
+
+    public ThumbnailCache() {
+        cache = CacheBuilder.newBuilder()
+                .maximumWeight(getSize() * 1024L * 1024L)
+                .weigher((String key, CachedImage value) -> value.data.length)
+                .build();
+    }
+
+    /**
+     * Returns the decrypted data of a file variation, from the cache if possible.
+     *
+     * @param fileId File ID
+     * @param size Size variation
+     * @param privateKey Private key of the file creator
+     * @return Decrypted data
+     * @throws Exception e
+     */
+    public byte[] get(String fileId, String size, String privateKey) throws Exception {
+        String key = fileId + "_" + size;
+        Path storedFile = DirectoryUtil.getStorageDirectory().resolve(key);
+        long lastModified = Files.getLastModifiedTime(storedFile).toMillis();
+        CachedImage cachedImage = cache.getIfPresent(key);
+        if (cachedImage != null && cachedImage.lastModified == lastModified) {
+            return cachedImage.data;
+        }
+
+        byte[] data;
+        try (InputStream inputStream = EncryptionUtil.decryptInputStream(Files.newInputStream(storedFile), privateKey)) {
+            data = ByteStreams.toByteArray(inputStream);
+        }
+        cache.put(key, new CachedImage(data, lastModified));
+        return data;
+    }
+
+    /**
+     * Remove all variations of a file from the cache.
+     *
+     * @param fileId File ID
+     */
+    public void invalidate(String fileId) {
+        for (String size : SIZES) {
+            cache.invalidate(fileId + "_" + size);
+        }
+    }
+
+    /**
+     * Returns the maximum size of the cache in megabytes.
+     *
+     * @return Maximum size in megabytes
+     */
+    private static int getSize() {
+        String envSize = System.getenv(Constants.THUMBNAIL_CACHE_SIZE_ENV);
+        if (!Strings.isNullOrEmpty(envSize)) {
+            try {
+                int size = Integer.parseInt(envSize);
+                if (size >= 0) {
+                    return size;
+                }
+            } catch (NumberFormatException e) {
+                // NOP
+            }
+            log.warn(Constants.THUMBNAIL_CACHE_SIZE_ENV + " needs to be a positive number or 0. Falling back to " + DEFAULT_SIZE + ".");
+        }
+        return DEFAULT_SIZE;
+    }
+
+    /**
+     * Decrypted image and the modification date of its stored file.
+     */
+    private static class CachedImage {
+        private final byte[] data;
+
+        private final long lastModified;
+
+        private CachedImage(byte[] data, long lastModified) {
+            this.data = data;
+            this.lastModified = lastModified;
+        }
+    }
+}
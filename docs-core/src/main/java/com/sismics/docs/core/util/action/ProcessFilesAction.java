@@ -1,5 +1,6 @@
 package com.sismics.docs.core.util.action;
 
+import com.sismics.docs.core.constant.FileProcessingLane;
 import com.sismics.docs.core.dao.FileDao;
 import com.sismics.docs.core.dao.UserDao;
 import com.sismics.docs.core.dao.dto.DocumentDto;
@@ -9,7 +10,6 @@ import com.sismics.docs.core.model.jpa.User;
 import com.sismics.docs.core.util.DirectoryUtil;
 import com.sismics.docs.core.util.EncryptionUtil;
 import com.sismics.docs.core.util.FileUtil;
-import com.sismics.util.context.ThreadLocalContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -44,13 +44,13 @@ public class ProcessFilesAction implements Action {
                 Path unencryptedFile = EncryptionUtil.decryptFile(storedFile, user.getPrivateKey());
 
                 // Start the asynchronous processing
-                FileUtil.startProcessingFile(file.getId());
                 FileUpdatedAsyncEvent event = new FileUpdatedAsyncEvent();
                 event.setUserId("admin");
                 event.setLanguage(documentDto.getLanguage());
                 event.setFileId(file.getId());
                 event.setUnencryptedFile(unencryptedFile);
-                ThreadLocalContext.get().addAsyncEvent(event);
+                event.setLane(FileProcessingLane.REPROCESS);
+                FileUtil.startProcessingFile(event);
             }
         } catch (Exception e) {
             log.error("Error processing a file", e);
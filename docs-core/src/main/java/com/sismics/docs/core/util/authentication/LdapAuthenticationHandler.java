@@ -2,9 +2,7 @@ package com.sismics.docs.core.util.authentication;
 
 import com.sismics.docs.core.constant.ConfigType;
 import com.sismics.docs.core.constant.Constants;
-import com.sismics.docs.core.dao.ConfigDao;
 import com.sismics.docs.core.dao.UserDao;
-import com.sismics.docs.core.model.jpa.Config;
 import com.sismics.docs.core.model.jpa.User;
 import com.sismics.docs.core.util.ConfigUtil;
 import com.sismics.util.ClasspathScanner;
@@ -38,9 +36,7 @@ public class LdapAuthenticationHandler implements AuthenticationHandler {
      * @return LdapConnection
      */
     private LdapConnection getConnection() {
-        ConfigDao configDao = new ConfigDao();
-        Config ldapEnabled = configDao.getById(ConfigType.LDAP_ENABLED);
-        if (ldapEnabled == null || !Boolean.parseBoolean(ldapEnabled.getValue())) {
+        if (!ConfigUtil.getConfigBooleanValue(ConfigType.LDAP_ENABLED, false)) {
             return null;
         }
 
@@ -23,12 +23,14 @@ public interface FormatHandler {
 
     /**
      * Generate a thumbnail.
+     * The handler decodes the file at the lowest resolution it can, but at least at the requested size.
      *
      * @param file File
+     * @param size Requested length of the longest side, the thumbnail may be bigger
      * @return Thumbnail
      * @throws Exception e
      */
-    BufferedImage generateThumbnail(Path file) throws Exception;
+    BufferedImage generateThumbnail(Path file, int size) throws Exception;
 
     /**
      * Extract text content.
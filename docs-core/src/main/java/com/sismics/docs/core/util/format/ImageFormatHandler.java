@@ -16,10 +16,14 @@ import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
 import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 import java.awt.image.BufferedImage;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Iterator;
 
 /**
  * Image format handler.
@@ -38,9 +42,26 @@ public class ImageFormatHandler implements FormatHandler {
     }
 
     @Override
-    public BufferedImage generateThumbnail(Path file) throws Exception {
-        try (InputStream inputStream = Files.newInputStream(file)) {
-            return ImageIO.read(inputStream);
+    public BufferedImage generateThumbnail(Path file, int size) throws Exception {
+        try (ImageInputStream imageInputStream = ImageIO.createImageInputStream(file.toFile())) {
+            Iterator<ImageReader> readerIterator = ImageIO.getImageReaders(imageInputStream);
+            if (!readerIterator.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readerIterator.next();
+            try {
+                reader.setInput(imageInputStream, true, true);
+
+                // Decode one pixel out of several in big images, keeping twice the requested size for a quality resize
+                ImageReadParam param = reader.getDefaultReadParam();
+                int subsampling = Math.max(reader.getWidth(0), reader.getHeight(0)) / (2 * size);
+                if (subsampling > 1) {
+                    param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                }
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
         }
     }
 
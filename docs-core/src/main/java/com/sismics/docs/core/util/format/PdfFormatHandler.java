@@ -4,10 +4,13 @@ import com.google.common.io.Closer;
 import com.sismics.docs.core.util.FileUtil;
 import com.sismics.docs.core.util.ConfigUtil;
 import com.sismics.docs.core.constant.ConfigType;
+import com.sismics.docs.core.model.context.AppContext;
+import com.sismics.docs.core.service.FileProcessingService;
 import com.sismics.util.mime.MimeType;
 import org.apache.pdfbox.io.MemoryUsageSetting;
 import org.apache.pdfbox.multipdf.PDFMergerUtility;
 import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
 import org.apache.pdfbox.rendering.ImageType;
 import org.apache.pdfbox.rendering.PDFRenderer;
 import org.apache.pdfbox.text.PDFTextStripper;
@@ -18,6 +21,10 @@ import java.awt.image.BufferedImage;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 
 /**
  * PDF format handler.
@@ -36,11 +43,14 @@ public class PdfFormatHandler implements FormatHandler {
     }
 
     @Override
-    public BufferedImage generateThumbnail(Path file) throws Exception {
+    public BufferedImage generateThumbnail(Path file, int size) throws Exception {
         try (InputStream inputStream = Files.newInputStream(file);
              PDDocument pdfDocument = PDDocument.load(inputStream)) {
+            // Render the first page directly at the requested size
+            PDRectangle box = pdfDocument.getPage(0).getCropBox();
+            float scale = size / Math.max(box.getWidth(), box.getHeight());
             PDFRenderer renderer = new PDFRenderer(pdfDocument);
-            return renderer.renderImage(0);
+            return renderer.renderImage(0, scale);
         }
     }
 
@@ -56,16 +66,9 @@ public class PdfFormatHandler implements FormatHandler {
 
         // No text content, try to OCR it
         if (language != null && content != null && content.trim().isEmpty() && ConfigUtil.getConfigBooleanValue(ConfigType.OCR_ENABLED, true)) {
-            StringBuilder sb = new StringBuilder();
             try (InputStream inputStream = Files.newInputStream(file);
                  PDDocument pdfDocument = PDDocument.load(inputStream)) {
-                PDFRenderer renderer = new PDFRenderer(pdfDocument);
-                for (int pageIndex = 0; pageIndex < pdfDocument.getNumberOfPages(); pageIndex++) {
-                    log.info("OCR page " + (pageIndex + 1) + "/" + pdfDocument.getNumberOfPages() + " of PDF file containing only images");
-                    sb.append(" ");
-                    sb.append(FileUtil.ocrFile(language, renderer.renderImageWithDPI(pageIndex, 300, ImageType.GRAY)));
-                }
-                return sb.toString();
+                return ocrPages(language, pdfDocument);
             } catch (Exception e) {
                 log.error("Error while OCR-izing the PDF", e);
             }
@@ -74,6 +77,58 @@ public class PdfFormatHandler implements FormatHandler {
         return content;
     }
 
+    /**
+     * OCR all pages of a PDF document.
+     * The pages are rendered one after the other (a PDF document is not thread-safe),
+     * and OCR-ized in parallel. The number of rendered pages waiting for their OCR is bounded.
+     *
+     * @param language Language to OCR
+     * @param pdfDocument PDF document
+     * @return Content extracted, in pages order
+     * @throws Exception e
+     */
+    private String ocrPages(String language, PDDocument pdfDocument) throws Exception {
+        FileProcessingService fileProcessingService = AppContext.getInstance().getFileProcessingService();
+        PDFRenderer renderer = new PDFRenderer(pdfDocument);
+        int pageCount = pdfDocument.getNumberOfPages();
+        Semaphore renderedPages = new Semaphore(fileProcessingService.getOcrThreadCount() + 1);
+        List<Future<String>> futureList = new ArrayList<>();
+        try {
+            for (int pageIndex = 0; pageIndex < pageCount; pageIndex++) {
+                renderedPages.acquire();
+                BufferedImage image;
+                try {
+                    image = renderer.renderImageWithDPI(pageIndex, 300, ImageType.GRAY);
+                } catch (Exception e) {
+                    renderedPages.release();
+                    throw e;
+                }
+
+                int pageNumber = pageIndex + 1;
+                futureList.add(fileProcessingService.submitOcr(() -> {
+                    try {
+                        log.info("OCR page " + pageNumber + "/" + pageCount + " of PDF file containing only images");
+                        return FileUtil.ocrFile(language, image);
+                    } finally {
+                        renderedPages.release();
+                    }
+                }));
+            }
+
+            StringBuilder sb = new StringBuilder();
+            for (Future<String> future : futureList) {
+                sb.append(" ");
+                sb.append(future.get());
+            }
+            return sb.toString();
+        } finally {
+            // Don't OCR the remaining pages if a page failed
+            for (Future<String> future : futureList) {
+                future.cancel(true);
+            }
+        }
+    }
+
     @Override
     public void appendToPdf(Path file, PDDocument doc, boolean fitImageToPage, int margin, MemoryUsageSetting memUsageSettings, Closer closer) throws Exception {
         PDDocument mergeDoc = PDDocument.load(file.toFile(), memUsageSettings);
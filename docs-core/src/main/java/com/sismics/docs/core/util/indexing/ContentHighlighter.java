@@ -0,0 +1,78 @@
+package com.sismics.docs.core.util.indexing;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.uhighlight.DefaultPassageFormatter;
+import org.apache.lucene.search.uhighlight.LengthGoalBreakIterator;
+import org.apache.lucene.search.uhighlight.PassageFormatter;
+import org.apache.lucene.search.uhighlight.UnifiedHighlighter;
+
+import java.io.IOException;
+import java.text.BreakIterator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Highlighter of the files content.
+ * The content is not stored in the index: the offsets come from the postings,
+ * and the text is provided by the caller, loaded from the database.
+ */
+class ContentHighlighter extends UnifiedHighlighter {
+    /**
+     * Target length of a highlighted passage.
+     */
+    private static final int PASSAGE_LENGTH = 100;
+
+    /**
+     * Content by Lucene document ID.
+     */
+    private final Map<Integer, String> contentMap;
+
+    /**
+     * Constructor.
+     *
+     * @param searcher Searcher
+     * @param analyzer Index analyzer
+     * @param contentMap Content by Lucene document ID
+     */
+    ContentHighlighter(IndexSearcher searcher, Analyzer analyzer, Map<Integer, String> contentMap) {
+        super(searcher, analyzer);
+        this.contentMap = contentMap;
+
+        // Terms searched in the stemmed content are highlighted too
+        setFieldMatcher(field -> field.equals("content") || field.startsWith("content."));
+    }
+
+    @Override
+    protected List<CharSequence[]> loadFieldValues(String[] fields, DocIdSetIterator docIter, int cacheCharsThreshold) throws IOException {
+        List<CharSequence[]> fieldValueList = new ArrayList<>();
+        for (int doc = docIter.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = docIter.nextDoc()) {
+            CharSequence[] fieldValues = new CharSequence[fields.length];
+            String content = contentMap.get(doc);
+            for (int i = 0; i < fields.length; i++) {
+                fieldValues[i] = content == null ? "" : content;
+            }
+            fieldValueList.add(fieldValues);
+        }
+        return fieldValueList;
+    }
+
+    @Override
+    protected BreakIterator getBreakIterator(String field) {
+        return LengthGoalBreakIterator.createClosestToLength(BreakIterator.getSentenceInstance(Locale.ROOT), PASSAGE_LENGTH);
+    }
+
+    @Override
+    protected PassageFormatter getFormatter(String field) {
+        return new DefaultPassageFormatter("<strong>", "</strong>", "... ", true);
+    }
+
+    @Override
+    protected int getMaxNoHighlightPassages(String field) {
+        // No highlight if nothing matches
+        return 0;
+    }
+}
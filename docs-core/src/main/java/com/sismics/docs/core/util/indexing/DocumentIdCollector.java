@@ -0,0 +1,67 @@
+package com.sismics.docs.core.util.indexing;
+
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.SimpleCollector;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Lucene collector of the matching document IDs.
+ * IDs are read from the doc values, no stored field is loaded and no hit is scored.
+ */
+class DocumentIdCollector extends SimpleCollector {
+    /**
+     * Doc values field containing the document ID.
+     */
+    private final String field;
+
+    /**
+     * Collected document IDs.
+     */
+    private final Set<String> documentIdSet = new HashSet<>();
+
+    /**
+     * Doc values of the current segment.
+     */
+    private SortedDocValues docValues;
+
+    /**
+     * Constructor.
+     *
+     * @param field Doc values field containing the document ID
+     */
+    DocumentIdCollector(String field) {
+        this.field = field;
+    }
+
+    @Override
+    protected void doSetNextReader(LeafReaderContext context) throws IOException {
+        docValues = DocValues.getSorted(context.reader(), field);
+    }
+
+    @Override
+    public void collect(int doc) throws IOException {
+        if (docValues.advanceExact(doc)) {
+            documentIdSet.add(docValues.lookupOrd(docValues.ordValue()).utf8ToString());
+        }
+    }
+
+    @Override
+    public ScoreMode scoreMode() {
+        return ScoreMode.COMPLETE_NO_SCORES;
+    }
+
+    /**
+     * Returns the collected document IDs.
+     *
+     * @return Document IDs
+     */
+    public Set<String> getDocumentIdSet() {
+        return documentIdSet;
+    }
+}
@@ -0,0 +1,115 @@
+package com.sismics.docs.core.util.indexing;
+
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progress of the full index rebuild.
+ */
+public class IndexRebuildProgress {
+    /**
+     * True if a rebuild is running.
+     */
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    /**
+     * Start date of the last rebuild.
+     */
+    private volatile Date startDate;
+
+    /**
+     * End date of the last rebuild.
+     */
+    private volatile Date endDate;
+
+    /**
+     * Number of documents to index.
+     */
+    private volatile long documentCount;
+
+    /**
+     * Number of files to index.
+     */
+    private volatile long fileCount;
+
+    /**
+     * Number of documents indexed so far.
+     */
+    private final AtomicLong indexedDocumentCount = new AtomicLong();
+
+    /**
+     * Number of files indexed so far.
+     */
+    private final AtomicLong indexedFileCount = new AtomicLong();
+
+    /**
+     * Mark a rebuild as started.
+     *
+     * @return False if a rebuild is already running
+     */
+    public boolean start() {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+        startDate = new Date();
+        endDate = null;
+        documentCount = 0;
+        fileCount = 0;
+        indexedDocumentCount.set(0);
+        indexedFileCount.set(0);
+        return true;
+    }
+
+    /**
+     * Mark the running rebuild as ended.
+     */
+    public void end() {
+        endDate = new Date();
+        running.set(false);
+    }
+
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    public Date getStartDate() {
+        return startDate;
+    }
+
+    public Date getEndDate() {
+        return endDate;
+    }
+
+    public long getDocumentCount() {
+        return documentCount;
+    }
+
+    public void setDocumentCount(long documentCount) {
+        this.documentCount = documentCount;
+    }
+
+    public long getFileCount() {
+        return fileCount;
+    }
+
+    public void setFileCount(long fileCount) {
+        this.fileCount = fileCount;
+    }
+
+    public long getIndexedDocumentCount() {
+        return indexedDocumentCount.get();
+    }
+
+    public void addIndexedDocumentCount(long count) {
+        indexedDocumentCount.addAndGet(count);
+    }
+
+    public long getIndexedFileCount() {
+        return indexedFileCount.get();
+    }
+
+    public void addIndexedFileCount(long count) {
+        indexedFileCount.addAndGet(count);
+    }
+}
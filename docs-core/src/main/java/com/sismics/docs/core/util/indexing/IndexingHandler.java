@@ -40,17 +40,48 @@ public interface IndexingHandler {
      */
     void clearIndex();
 
+    /**
+     * Start a full rebuild of the index in a side index.
+     * Searches keep using the current index, and the documents and files changed until the rebuild is finished
+     * are reindexed in the side index from their current state before the swap.
+     *
+     * @throws Exception e
+     */
+    void startRebuild() throws Exception;
+
+    /**
+     * Commit the side index and swap it with the current index.
+     *
+     * @throws Exception e
+     */
+    void finishRebuild() throws Exception;
+
+    /**
+     * Discard the side index, if a rebuild is running.
+     */
+    void cancelRebuild();
+
+    /**
+     * Invalidate the cached search results.
+     * Must be called after a change of the documents visible to the searches is committed.
+     */
+    void invalidateSearchCache();
+
     /**
      * Index a list of documents.
+     * Goes to the side index while the index is rebuilt.
      *
      * @param documentList All documents
+     * @throws IllegalStateException Error indexing the documents
      */
     void createDocuments(List<Document> documentList);
 
     /**
      * Index a list of files.
+     * Goes to the side index while the index is rebuilt.
      *
      * @param fileList All files
+     * @throws IllegalStateException Error indexing the files
      */
     void createFiles(List<File> fileList);
 
@@ -0,0 +1,152 @@
+package com.sismics.docs.core.util.indexing;
+
+import com.google.common.collect.ImmutableMap;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.AnalyzerWrapper;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.ar.ArabicAnalyzer;
+import org.apache.lucene.analysis.cjk.CJKAnalyzer;
+import org.apache.lucene.analysis.cz.CzechAnalyzer;
+import org.apache.lucene.analysis.da.DanishAnalyzer;
+import org.apache.lucene.analysis.de.GermanAnalyzer;
+import org.apache.lucene.analysis.en.EnglishAnalyzer;
+import org.apache.lucene.analysis.es.SpanishAnalyzer;
+import org.apache.lucene.analysis.fi.FinnishAnalyzer;
+import org.apache.lucene.analysis.fr.FrenchAnalyzer;
+import org.apache.lucene.analysis.hi.HindiAnalyzer;
+import org.apache.lucene.analysis.hu.HungarianAnalyzer;
+import org.apache.lucene.analysis.it.ItalianAnalyzer;
+import org.apache.lucene.analysis.lv.LatvianAnalyzer;
+import org.apache.lucene.analysis.miscellaneous.ASCIIFoldingFilter;
+import org.apache.lucene.analysis.nl.DutchAnalyzer;
+import org.apache.lucene.analysis.no.NorwegianAnalyzer;
+import org.apache.lucene.analysis.pt.PortugueseAnalyzer;
+import org.apache.lucene.analysis.ru.RussianAnalyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.analysis.sv.SwedishAnalyzer;
+import org.apache.lucene.analysis.th.ThaiAnalyzer;
+import org.apache.lucene.analysis.tr.TurkishAnalyzer;
+
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Analyzer choosing the analysis chain from the field name.
+ * Language fields are named "field.language", with the language code used by the documents (eg. "content.fra"),
+ * and are analyzed with the stemmer and stop words of this language, then folded to ASCII.
+ * All other fields use the standard analyzer.
+ */
+class LanguageAnalyzer extends AnalyzerWrapper {
+    /**
+     * Separator between the field name and the language.
+     */
+    private static final char LANGUAGE_SEPARATOR = '.';
+
+    /**
+     * Analyzers by language, only for the languages having a specific analysis chain.
+     */
+    private static final Map<String, Supplier<Analyzer>> ANALYZER_MAP = ImmutableMap.<String, Supplier<Analyzer>>builder()
+            .put("eng", EnglishAnalyzer::new)
+            .put("fra", FrenchAnalyzer::new)
+            .put("ita", ItalianAnalyzer::new)
+            .put("deu", GermanAnalyzer::new)
+            .put("spa", SpanishAnalyzer::new)
+            .put("por", PortugueseAnalyzer::new)
+            .put("rus", RussianAnalyzer::new)
+            .put("ara", ArabicAnalyzer::new)
+            .put("hin", HindiAnalyzer::new)
+            .put("chi_sim", CJKAnalyzer::new)
+            .put("chi_tra", CJKAnalyzer::new)
+            .put("jpn", CJKAnalyzer::new)
+            .put("kor", CJKAnalyzer::new)
+            .put("tha", ThaiAnalyzer::new)
+            .put("nld", DutchAnalyzer::new)
+            .put("tur", TurkishAnalyzer::new)
+            .put("hun", HungarianAnalyzer::new)
+            .put("fin", FinnishAnalyzer::new)
+            .put("swe", SwedishAnalyzer::new)
+            .put("lav", LatvianAnalyzer::new)
+            .put("dan", DanishAnalyzer::new)
+            .put("nor", NorwegianAnalyzer::new)
+            .put("ces", CzechAnalyzer::new)
+            .build();
+
+    /**
+     * Default analyzer.
+     */
+    private final Analyzer defaultAnalyzer = new StandardAnalyzer();
+
+    /**
+     * Analyzers instantiated by language.
+     */
+    private final Map<String, Analyzer> languageAnalyzerMap;
+
+    LanguageAnalyzer() {
+        super(PER_FIELD_REUSE_STRATEGY);
+        ImmutableMap.Builder<String, Analyzer> builder = ImmutableMap.builder();
+        for (Map.Entry<String, Supplier<Analyzer>> entry : ANALYZER_MAP.entrySet()) {
+            builder.put(entry.getKey(), entry.getValue().get());
+        }
+        languageAnalyzerMap = builder.build();
+    }
+
+    /**
+     * Returns the language field of a field.
+     *
+     * @param field Field name
+     * @param language Language
+     * @return Language field name, or null if this language has no specific analysis chain
+     */
+    static String getLanguageField(String field, String language) {
+        if (language == null || !ANALYZER_MAP.containsKey(language)) {
+            return null;
+        }
+        return field + LANGUAGE_SEPARATOR + language;
+    }
+
+    /**
+     * Returns the language of a field.
+     *
+     * @param fieldName Field name
+     * @return Language, or null if this is not a language field
+     */
+    private static String getLanguage(String fieldName) {
+        int index = fieldName.lastIndexOf(LANGUAGE_SEPARATOR);
+        if (index == -1) {
+            return null;
+        }
+        return fieldName.substring(index + 1);
+    }
+
+    @Override
+    protected Analyzer getWrappedAnalyzer(String fieldName) {
+        String language = getLanguage(fieldName);
+        Analyzer analyzer = language == null ? null : languageAnalyzerMap.get(language);
+        return analyzer == null ? defaultAnalyzer : analyzer;
+    }
+
+    @Override
+    protected TokenStreamComponents wrapComponents(String fieldName, TokenStreamComponents components) {
+        if (getLanguage(fieldName) == null) {
+            return components;
+        }
+        return new TokenStreamComponents(components.getSource(), new ASCIIFoldingFilter(components.getTokenStream()));
+    }
+
+    @Override
+    protected TokenStream wrapTokenStreamForNormalization(String fieldName, TokenStream in) {
+        if (getLanguage(fieldName) == null) {
+            return in;
+        }
+        return new ASCIIFoldingFilter(in);
+    }
+
+    @Override
+    public void close() {
+        defaultAnalyzer.close();
+        for (Analyzer analyzer : languageAnalyzerMap.values()) {
+            analyzer.close();
+        }
+        super.close();
+    }
+}
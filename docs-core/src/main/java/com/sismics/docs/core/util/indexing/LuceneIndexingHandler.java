@@ -2,13 +2,22 @@ package com.sismics.docs.core.util.indexing;
 
 import com.google.common.base.Joiner;
 import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
+import com.sismics.docs.core.constant.AclTargetType;
 import com.sismics.docs.core.constant.ConfigType;
+import com.sismics.docs.core.constant.Constants;
 import com.sismics.docs.core.constant.PermType;
+import com.sismics.docs.core.dao.AclDao;
 import com.sismics.docs.core.dao.ConfigDao;
+import com.sismics.docs.core.dao.DocumentDao;
+import com.sismics.docs.core.dao.FileDao;
+import com.sismics.docs.core.dao.TagDao;
 import com.sismics.docs.core.dao.criteria.DocumentCriteria;
+import com.sismics.docs.core.dao.criteria.TagCriteria;
+import com.sismics.docs.core.dao.dto.AclDto;
 import com.sismics.docs.core.dao.dto.DocumentDto;
+import com.sismics.docs.core.dao.dto.TagDto;
 import com.sismics.docs.core.event.RebuildIndexAsyncEvent;
 import com.sismics.docs.core.model.context.AppContext;
 import com.sismics.docs.core.model.jpa.Config;
@@ -16,57 +25,96 @@ import com.sismics.docs.core.model.jpa.Document;
 import com.sismics.docs.core.model.jpa.File;
 import com.sismics.docs.core.util.DirectoryUtil;
 import com.sismics.docs.core.util.SecurityUtil;
+import com.sismics.docs.core.util.TransactionUtil;
 import com.sismics.docs.core.util.jpa.PaginatedList;
 import com.sismics.docs.core.util.jpa.PaginatedLists;
 import com.sismics.docs.core.util.jpa.QueryParam;
+import com.sismics.docs.core.util.jpa.QueryUtil;
 import com.sismics.docs.core.util.jpa.SortCriteria;
 import com.sismics.util.ClasspathScanner;
 import org.apache.lucene.analysis.Analyzer;
-import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.SortedDocValuesField;
 import org.apache.lucene.document.StringField;
 import org.apache.lucene.document.TextField;
 import org.apache.lucene.index.CheckIndex;
 import org.apache.lucene.index.ConcurrentMergeScheduler;
 import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.IndexOptions;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.MultiTerms;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.index.SortedDocValues;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
 import org.apache.lucene.queryparser.simple.SimpleQueryParser;
 import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.ControlledRealTimeReopenThread;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TermInSetQuery;
+import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TopDocs;
-import org.apache.lucene.search.highlight.Highlighter;
-import org.apache.lucene.search.highlight.QueryScorer;
-import org.apache.lucene.search.highlight.SimpleHTMLEncoder;
-import org.apache.lucene.search.highlight.SimpleHTMLFormatter;
-import org.apache.lucene.search.spell.LuceneDictionary;
-import org.apache.lucene.search.suggest.Lookup;
-import org.apache.lucene.search.suggest.analyzing.FuzzySuggester;
+import org.apache.lucene.search.TopFieldCollector;
 import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.MMapDirectory;
 import org.apache.lucene.store.NIOFSDirectory;
+import org.apache.lucene.store.NativeFSLockFactory;
 import org.apache.lucene.store.NoLockFactory;
 import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.BytesRef;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Lucene indexing handler.
- * Documents and files are indexed in Lucene, but only used for fulltext search.
- * Other search criteria are still using the database.
+ * Documents and files are indexed in Lucene. By default, the index is only used for fulltext search
+ * and the other search criteria are resolved by the database.
+ * With DOCS_LUCENE_FILTERING enabled, all search criteria are resolved by Lucene,
+ * and the database only loads the documents of the requested page.
  *
  * @author bgamard
  */
@@ -83,14 +131,133 @@ public class LuceneIndexingHandler implements IndexingHandler {
     private Directory directory;
 
     /**
-     * Directory reader.
+     * Index writer.
      */
-    private DirectoryReader directoryReader;
+    private IndexWriter indexWriter;
 
     /**
-     * Index writer.
+     * Near real-time searcher manager, shared by all searching threads.
      */
-    private IndexWriter indexWriter;
+    private SearcherManager searcherManager;
+
+    /**
+     * Background thread refreshing the searcher manager.
+     */
+    private ControlledRealTimeReopenThread<IndexSearcher> reopenThread;
+
+    /**
+     * Search terms suggester.
+     */
+    private SearchSuggester searchSuggester;
+
+    /**
+     * Executor committing the index writer periodically.
+     */
+    private ScheduledExecutorService commitExecutor;
+
+    /**
+     * Lucene directory storage type.
+     */
+    private String luceneStorage;
+
+    /**
+     * Side directory of the index being rebuilt, null if no rebuild is running.
+     */
+    private Directory rebuildDirectory;
+
+    /**
+     * Index writer of the index being rebuilt, null if no rebuild is running.
+     */
+    private IndexWriter rebuildWriter;
+
+    /**
+     * IDs of the documents and files changed while the index is rebuilt.
+     * The batches of the rebuild may have been loaded before these changes, they are replayed at the end.
+     */
+    private final Set<String> rebuildChangedIdSet = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Lock protecting the index from being swapped while it is used.
+     * Searches and writes share the read lock, the swap takes the write lock.
+     */
+    private final ReadWriteLock indexLock = new ReentrantReadWriteLock();
+
+    /**
+     * Analyzer used for indexing and searching, with a specific analysis chain on language fields.
+     */
+    private final Analyzer analyzer = new LanguageAnalyzer();
+
+    /**
+     * Fields of documents also indexed with the analysis chain of the document language.
+     */
+    private static final String[] DOCUMENT_LANGUAGE_FIELDS = { "title", "description", "subject" };
+
+    /**
+     * Default interval between two index commits, in seconds.
+     */
+    private static final long DEFAULT_COMMIT_INTERVAL = 10;
+
+    /**
+     * Maximum time a searcher can be stale, in seconds.
+     */
+    private static final double REOPEN_MAX_STALE_SEC = 1.0;
+
+    /**
+     * Minimum time a searcher can be stale when a search waits for a change, in seconds.
+     */
+    private static final double REOPEN_MIN_STALE_SEC = 0.025;
+
+    /**
+     * Commit data key of the index version.
+     */
+    private static final String INDEX_VERSION_KEY = "docs.index.version";
+
+    /**
+     * Version of the index fields layout.
+     * Must be incremented on each change in the indexed fields to force a full reindex.
+     */
+    private static final String INDEX_VERSION = "5";
+
+    /**
+     * Maximum number of file hits considered to highlight one document.
+     */
+    private static final int HIGHLIGHT_MAX_HITS = 3;
+
+    /**
+     * Type of the content field: not stored, indexed with offsets for highlighting.
+     */
+    private static final FieldType CONTENT_FIELD_TYPE = new FieldType(TextField.TYPE_NOT_STORED);
+    static {
+        CONTENT_FIELD_TYPE.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS);
+        CONTENT_FIELD_TYPE.freeze();
+    }
+
+    /**
+     * Lucene sort fields by SQL sort column, for the columns sortable in Lucene.
+     */
+    private static final Map<Integer, SortField> SORT_FIELD_MAP = ImmutableMap.<Integer, SortField>builder()
+            .put(0, new SortField("document_id", SortField.Type.STRING))
+            .put(1, new SortField("title_raw", SortField.Type.STRING))
+            .put(2, new SortField("description_raw", SortField.Type.STRING))
+            .put(3, new SortField("create_date", SortField.Type.LONG))
+            .put(4, new SortField("language", SortField.Type.STRING))
+            .put(8, new SortField("update_date", SortField.Type.LONG))
+            .build();
+
+    /**
+     * True if the search criteria are resolved in Lucene instead of the database.
+     */
+    private boolean luceneFiltering;
+
+    /**
+     * Cache of the search results, null if disabled.
+     */
+    private SearchResultCache searchResultCache;
+
+    /**
+     * Default maximum number of cached search results.
+     */
+    private static final int DEFAULT_SEARCH_CACHE_SIZE = 200;
 
     @Override
     public boolean accept() {
@@ -100,16 +267,23 @@ public class LuceneIndexingHandler implements IndexingHandler {
 
     @Override
     public void startUp() throws Exception {
+        luceneFiltering = Boolean.parseBoolean(System.getenv(Constants.LUCENE_FILTERING_ENV))
+                || Boolean.parseBoolean(System.getProperty("docs.lucene_filtering"));
+        if (luceneFiltering) {
+            log.info("Search criteria are resolved by Lucene");
+        }
+        int searchCacheSize = getSearchCacheSize();
+        if (searchCacheSize > 0) {
+            searchResultCache = new SearchResultCache(searchCacheSize);
+        }
+
         try {
             initLucene();
         } catch (Exception e) {
             // An error occurred initializing Lucene, the index is out of date or broken, delete everything
             log.info("Unable to initialize Lucene, cleaning up the index: " + e.getMessage());
-            Path luceneDirectory = DirectoryUtil.getLuceneDirectory();
-            Files.walk(luceneDirectory)
-                    .sorted(Comparator.reverseOrder())
-                    .map(Path::toFile)
-                    .forEach(java.io.File::delete);
+            shutDown();
+            deleteDirectory(DirectoryUtil.getLuceneDirectory());
 
             // Re-initialize and schedule a full reindex
             initLucene();
@@ -121,45 +295,274 @@ public class LuceneIndexingHandler implements IndexingHandler {
     private void initLucene() throws Exception {
         ConfigDao configDao = new ConfigDao();
         Config luceneStorageConfig = configDao.getById(ConfigType.LUCENE_DIRECTORY_STORAGE);
-        String luceneStorage = luceneStorageConfig == null ? null : luceneStorageConfig.getValue();
+        luceneStorage = luceneStorageConfig == null ? null : luceneStorageConfig.getValue();
+        if (luceneStorage != null && !luceneStorage.equals("RAM")) {
+            recoverRebuildSwap();
+        }
+        directory = openDirectory(DirectoryUtil::getLuceneDirectory);
+
+        // Check index version and rebuild it if necessary,
+        // before the index writer takes the write lock CheckIndex needs
+        if (DirectoryReader.indexExists(directory)) {
+            log.info("Checking index health and version");
+            try (CheckIndex checkIndex = new CheckIndex(directory)) {
+                CheckIndex.Status status = checkIndex.checkIndex();
+                if (!status.clean) {
+                    throw new Exception("Index is dirty");
+                }
+            }
+            if (!INDEX_VERSION.equals(getIndexVersion(directory))) {
+                throw new Exception("Index version is outdated");
+            }
+        }
+
+        // Create an index writer
+        indexWriter = newIndexWriter(directory, IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
+        indexWriter.setLiveCommitData(Collections.singletonMap(INDEX_VERSION_KEY, INDEX_VERSION).entrySet());
+        openSearchers();
+
+        // Commits are batched on a timer instead of being done on each change
+        long commitInterval = getCommitInterval();
+        commitExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "lucene-commit");
+            thread.setDaemon(true);
+            return thread;
+        });
+        commitExecutor.scheduleWithFixedDelay(this::commit, commitInterval, commitInterval, TimeUnit.SECONDS);
+    }
 
+    /**
+     * Open a Lucene directory according to the configured storage.
+     *
+     * @param pathSupplier Path of the directory, only resolved for file storage
+     * @return Lucene directory
+     * @throws IOException e
+     */
+    private Directory openDirectory(Supplier<Path> pathSupplier) throws IOException {
         // RAM directory storage by default
         if (luceneStorage == null || luceneStorage.equals("RAM")) {
-            directory = new RAMDirectory();
             log.info("Using RAM Lucene storage");
-        } else if (luceneStorage.equals("FILE")) {
-            Path luceneDirectory = DirectoryUtil.getLuceneDirectory();
-            log.info("Using file Lucene storage: {}", luceneDirectory);
-            directory = new NIOFSDirectory(luceneDirectory, NoLockFactory.INSTANCE);
+            return new RAMDirectory();
+        }
+        Path path = pathSupplier.get();
+        if (luceneStorage.equals("MMAP")) {
+            // Memory mapped files, the index lives in the OS page cache instead of the heap
+            log.info("Using memory mapped Lucene storage: {}", path);
+            return new MMapDirectory(path, NativeFSLockFactory.INSTANCE);
         }
+        log.info("Using file Lucene storage: {}", path);
+        return new NIOFSDirectory(path, NoLockFactory.INSTANCE);
+    }
 
-        // Create an index writer
-        IndexWriterConfig config = new IndexWriterConfig(new StandardAnalyzer());
+    /**
+     * Create a new index writer.
+     *
+     * @param directory Lucene directory
+     * @param openMode Open mode
+     * @return Index writer
+     * @throws IOException e
+     */
+    private IndexWriter newIndexWriter(Directory directory, IndexWriterConfig.OpenMode openMode) throws IOException {
+        IndexWriterConfig config = new IndexWriterConfig(analyzer);
+        config.setOpenMode(openMode);
         config.setCommitOnClose(true);
         config.setMergeScheduler(new ConcurrentMergeScheduler());
-        indexWriter = new IndexWriter(directory, config);
+        return new IndexWriter(directory, config);
+    }
 
-        // Check index version and rebuild it if necessary
-        if (DirectoryReader.indexExists(directory)) {
-            log.info("Checking index health and version");
-            try (CheckIndex checkIndex = new CheckIndex(directory)) {
-                CheckIndex.Status status = checkIndex.checkIndex();
-                if (!status.clean) {
-                    throw new Exception("Index is dirty");
+    /**
+     * Open the near real-time searchers and the suggester on the current index writer.
+     *
+     * @throws IOException e
+     */
+    private void openSearchers() throws IOException {
+        // Near real-time searchers directly opened from the writer, refreshed in background
+        searcherManager = new SearcherManager(indexWriter, null);
+        reopenThread = new ControlledRealTimeReopenThread<>(indexWriter, searcherManager, REOPEN_MAX_STALE_SEC, REOPEN_MIN_STALE_SEC);
+        reopenThread.setName("lucene-reopen");
+        reopenThread.setDaemon(true);
+        reopenThread.start();
+
+        // Suggester built once and refreshed in background
+        searchSuggester = new SearchSuggester(searcherManager);
+        searchSuggester.startAsync();
+        searchSuggester.awaitRunning();
+    }
+
+    /**
+     * Close the searchers and the suggester.
+     */
+    private void closeSearchers() {
+        if (searchSuggester != null) {
+            searchSuggester.stopAsync();
+            searchSuggester.awaitTerminated();
+        }
+        if (reopenThread != null) {
+            reopenThread.close();
+        }
+        if (searcherManager != null) {
+            try {
+                searcherManager.close();
+            } catch (IOException e) {
+                log.error("Error closing the searcher manager", e);
+            }
+        }
+    }
+
+    /**
+     * Complete a swap of the rebuilt index interrupted by a crash.
+     * The current index is moved aside before the rebuilt one is moved in its place.
+     *
+     * @throws IOException e
+     */
+    private void recoverRebuildSwap() throws IOException {
+        Path luceneDirectory = DirectoryUtil.getLuceneDirectory();
+        Path oldDirectory = getOldDirectory(luceneDirectory);
+        if (!Files.exists(oldDirectory)) {
+            return;
+        }
+        if (!indexExists(luceneDirectory)) {
+            // Interrupted between the two moves, the rebuilt index is committed before the swap
+            Path rebuildDirectory = DirectoryUtil.getLuceneRebuildDirectory();
+            Path sourceDirectory = indexExists(rebuildDirectory) ? rebuildDirectory : oldDirectory;
+            log.warn("Recovering an interrupted index swap from {}", sourceDirectory);
+            deleteDirectory(luceneDirectory);
+            Files.move(sourceDirectory, luceneDirectory, StandardCopyOption.ATOMIC_MOVE);
+        }
+        deleteDirectory(oldDirectory);
+    }
+
+    /**
+     * Returns the directory the current index is moved to during a swap.
+     *
+     * @param luceneDirectory Lucene directory
+     * @return Old Lucene directory
+     */
+    private static Path getOldDirectory(Path luceneDirectory) {
+        return luceneDirectory.resolveSibling(luceneDirectory.getFileName() + "_old");
+    }
+
+    /**
+     * Returns true if a directory contains a committed index.
+     *
+     * @param path Directory
+     * @return True if an index exists
+     * @throws IOException e
+     */
+    private static boolean indexExists(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return false;
+        }
+        try (Directory fsDirectory = FSDirectory.open(path, NoLockFactory.INSTANCE)) {
+            return DirectoryReader.indexExists(fsDirectory);
+        }
+    }
+
+    /**
+     * Delete a directory and all its content.
+     *
+     * @param path Directory
+     * @throws IOException e
+     */
+    private void deleteDirectory(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (Stream<Path> pathStream = Files.walk(path)) {
+            pathStream.sorted(Comparator.reverseOrder())
+                    .map(Path::toFile)
+                    .forEach(java.io.File::delete);
+        }
+    }
+
+    /**
+     * Returns the version of the index fields layout, as stored in the last commit.
+     *
+     * @param directory Lucene directory
+     * @return Index version
+     * @throws IOException e
+     */
+    private String getIndexVersion(Directory directory) throws IOException {
+        return SegmentInfos.readLatestCommit(directory).getUserData().get(INDEX_VERSION_KEY);
+    }
+
+    /**
+     * Returns the interval between two index commits.
+     *
+     * @return Commit interval in seconds
+     */
+    private long getCommitInterval() {
+        String envCommitInterval = System.getenv(Constants.LUCENE_COMMIT_INTERVAL_ENV);
+        if (!Strings.isNullOrEmpty(envCommitInterval)) {
+            try {
+                long commitInterval = Long.parseLong(envCommitInterval);
+                if (commitInterval > 0) {
+                    return commitInterval;
                 }
+            } catch (NumberFormatException e) {
+                // NOP
             }
+            log.warn(Constants.LUCENE_COMMIT_INTERVAL_ENV + " needs to be a positive number of seconds. Falling back to " + DEFAULT_COMMIT_INTERVAL + ".");
+        }
+        return DEFAULT_COMMIT_INTERVAL;
+    }
+
+    /**
+     * Returns the maximum number of cached search results.
+     *
+     * @return Search cache size, 0 to disable the cache
+     */
+    private int getSearchCacheSize() {
+        String envSearchCacheSize = System.getenv(Constants.SEARCH_CACHE_SIZE_ENV);
+        if (!Strings.isNullOrEmpty(envSearchCacheSize)) {
+            try {
+                int searchCacheSize = Integer.parseInt(envSearchCacheSize);
+                if (searchCacheSize >= 0) {
+                    return searchCacheSize;
+                }
+            } catch (NumberFormatException e) {
+                // NOP
+            }
+            log.warn(Constants.SEARCH_CACHE_SIZE_ENV + " needs to be a positive number or 0. Falling back to " + DEFAULT_SEARCH_CACHE_SIZE + ".");
+        }
+        return DEFAULT_SEARCH_CACHE_SIZE;
+    }
+
+    @Override
+    public void invalidateSearchCache() {
+        if (searchResultCache != null) {
+            searchResultCache.invalidate();
+        }
+    }
+
+    /**
+     * Commit the pending changes of the index writer, if any.
+     */
+    private void commit() {
+        indexLock.readLock().lock();
+        try {
+            if (indexWriter.hasUncommittedChanges()) {
+                indexWriter.commit();
+            }
+        } catch (Exception e) {
+            log.error("Cannot commit index writer", e);
+        } finally {
+            indexLock.readLock().unlock();
         }
     }
 
     @Override
     public void shutDown() {
-        if (directoryReader != null) {
+        if (commitExecutor != null) {
+            commitExecutor.shutdown();
             try {
-                directoryReader.close();
-            } catch (IOException e) {
-                log.error("Error closing the index reader", e);
+                commitExecutor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                // NOP
             }
         }
+        cancelRebuild();
+        closeSearchers();
         if (indexWriter != null) {
             try {
                 indexWriter.close();
@@ -178,48 +581,186 @@ public class LuceneIndexingHandler implements IndexingHandler {
 
     @Override
     public void clearIndex() {
-        handle(IndexWriter::deleteAll);
+        handle(null, IndexWriter::deleteAll);
+    }
+
+    @Override
+    public void startRebuild() throws Exception {
+        indexLock.writeLock().lock();
+        try {
+            if (rebuildWriter != null) {
+                throw new IllegalStateException("An index rebuild is already running");
+            }
+            log.info("Rebuilding the index in a side index");
+            rebuildDirectory = openDirectory(DirectoryUtil::getLuceneRebuildDirectory);
+            rebuildWriter = newIndexWriter(rebuildDirectory, IndexWriterConfig.OpenMode.CREATE);
+            rebuildWriter.setLiveCommitData(Collections.singletonMap(INDEX_VERSION_KEY, INDEX_VERSION).entrySet());
+            rebuildChangedIdSet.clear();
+        } finally {
+            indexLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void finishRebuild() throws Exception {
+        indexLock.writeLock().lock();
+        try {
+            if (rebuildWriter == null) {
+                throw new IllegalStateException("No index rebuild is running");
+            }
+
+            // Replay the changes made since the rebuild started, then a single commit of the whole rebuilt index
+            replayRebuildChanges();
+            rebuildWriter.commit();
+
+            // Close the current index
+            closeSearchers();
+            indexWriter.rollback();
+            directory.close();
+
+            if (rebuildDirectory instanceof RAMDirectory) {
+                // The side index simply becomes the current one
+                directory = rebuildDirectory;
+                indexWriter = rebuildWriter;
+            } else {
+                // Swap the directories and reopen the index, a crash in between is recovered on startup
+                rebuildWriter.close();
+                rebuildDirectory.close();
+                Path luceneDirectory = DirectoryUtil.getLuceneDirectory();
+                Path oldDirectory = getOldDirectory(luceneDirectory);
+                deleteDirectory(oldDirectory);
+                Files.move(luceneDirectory, oldDirectory, StandardCopyOption.ATOMIC_MOVE);
+                Files.move(DirectoryUtil.getLuceneRebuildDirectory(), luceneDirectory, StandardCopyOption.ATOMIC_MOVE);
+                deleteDirectory(oldDirectory);
+                directory = openDirectory(() -> luceneDirectory);
+                indexWriter = newIndexWriter(directory, IndexWriterConfig.OpenMode.APPEND);
+                indexWriter.setLiveCommitData(Collections.singletonMap(INDEX_VERSION_KEY, INDEX_VERSION).entrySet());
+            }
+            rebuildDirectory = null;
+            rebuildWriter = null;
+            rebuildChangedIdSet.clear();
+            openSearchers();
+            invalidateSearchCache();
+            log.info("Rebuilt index swapped in");
+        } finally {
+            indexLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void cancelRebuild() {
+        indexLock.writeLock().lock();
+        try {
+            if (rebuildWriter == null) {
+                return;
+            }
+            log.info("Cancelling the index rebuild");
+            try {
+                rebuildWriter.rollback();
+                rebuildDirectory.close();
+            } catch (IOException e) {
+                log.error("Error closing the rebuilt index", e);
+            }
+            rebuildDirectory = null;
+            rebuildWriter = null;
+            rebuildChangedIdSet.clear();
+        } finally {
+            indexLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Reindex in the side index the documents and files changed since the rebuild started, from their current state.
+     * Must be called with the write lock, so no other change is made meanwhile.
+     *
+     * @throws Exception e
+     */
+    private void replayRebuildChanges() throws Exception {
+        if (rebuildChangedIdSet.isEmpty()) {
+            return;
+        }
+        log.info("Replaying {} changes made during the index rebuild", rebuildChangedIdSet.size());
+
+        // Documents and files deleted since are not found
+        Map<String, org.apache.lucene.document.Document> luceneDocumentMap = new HashMap<>();
+        AtomicBoolean loaded = new AtomicBoolean();
+        TransactionUtil.handle(() -> {
+            DocumentDao documentDao = new DocumentDao();
+            FileDao fileDao = new FileDao();
+            for (String id : rebuildChangedIdSet) {
+                Document document = documentDao.getById(id);
+                if (document != null) {
+                    luceneDocumentMap.put(id, getDocumentFromDocument(document));
+                    continue;
+                }
+                File file = fileDao.getActiveById(id);
+                if (file != null) {
+                    luceneDocumentMap.put(id, getDocumentFromFile(file));
+                }
+            }
+            loaded.set(true);
+        });
+        if (!loaded.get()) {
+            throw new IllegalStateException("Error loading the changes made during the index rebuild");
+        }
+
+        for (String id : rebuildChangedIdSet) {
+            org.apache.lucene.document.Document luceneDocument = luceneDocumentMap.get(id);
+            if (luceneDocument == null) {
+                rebuildWriter.deleteDocuments(new Term("id", id));
+            } else {
+                rebuildWriter.updateDocument(new Term("id", id), luceneDocument);
+            }
+        }
     }
 
     @Override
     public void createDocuments(List<Document> documentList) {
-        handle(indexWriter -> {
+        handleBulk(indexWriter -> {
             for (Document document : documentList) {
                 org.apache.lucene.document.Document luceneDocument = getDocumentFromDocument(document);
-                indexWriter.addDocument(luceneDocument);
+                indexWriter.updateDocument(new Term("id", document.getId()), luceneDocument);
             }
         });
     }
 
     @Override
     public void createFiles(List<File> fileList) {
-        handle(indexWriter -> {
+        // The languages of the documents are loaded once for the whole list
+        Set<String> documentIdSet = fileList.stream()
+                .map(File::getDocumentId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        Map<String, String> languageMap = new DocumentDao().getLanguageById(documentIdSet);
+        handleBulk(indexWriter -> {
             for (File file : fileList) {
-                org.apache.lucene.document.Document luceneDocument = getDocumentFromFile(file);
-                indexWriter.addDocument(luceneDocument);
+                org.apache.lucene.document.Document luceneDocument = getDocumentFromFile(file, languageMap.get(file.getDocumentId()));
+                indexWriter.updateDocument(new Term("id", file.getId()), luceneDocument);
             }
         });
     }
 
     @Override
     public void createDocument(final Document document) {
-        handle(indexWriter -> {
+        // Upsert, the document may already be in an index being rebuilt
+        handle(document.getId(), indexWriter -> {
             org.apache.lucene.document.Document luceneDocument = getDocumentFromDocument(document);
-            indexWriter.addDocument(luceneDocument);
+            indexWriter.updateDocument(new Term("id", document.getId()), luceneDocument);
         });
     }
 
     @Override
     public void createFile(final File file) {
-        handle(indexWriter -> {
+        // Upsert, the file may already be in an index being rebuilt
+        handle(file.getId(), indexWriter -> {
             org.apache.lucene.document.Document luceneDocument = getDocumentFromFile(file);
-            indexWriter.addDocument(luceneDocument);
+            indexWriter.updateDocument(new Term("id", file.getId()), luceneDocument);
         });
     }
 
     @Override
     public void updateFile(final File file) {
-        handle(indexWriter -> {
+        handle(file.getId(), indexWriter -> {
             org.apache.lucene.document.Document luceneDocument = getDocumentFromFile(file);
             indexWriter.updateDocument(new Term("id", file.getId()), luceneDocument);
         });
@@ -227,7 +768,7 @@ public class LuceneIndexingHandler implements IndexingHandler {
 
     @Override
     public void updateDocument(final Document document) {
-        handle(indexWriter -> {
+        handle(document.getId(), indexWriter -> {
             org.apache.lucene.document.Document luceneDocument = getDocumentFromDocument(document);
             indexWriter.updateDocument(new Term("id", document.getId()), luceneDocument);
         });
@@ -235,37 +776,109 @@ public class LuceneIndexingHandler implements IndexingHandler {
 
     @Override
     public void deleteDocument(final String id) {
-        handle(indexWriter -> indexWriter.deleteDocuments(new Term("id", id)));
+        handle(id, indexWriter -> indexWriter.deleteDocuments(new Term("id", id)));
     }
 
     @Override
     public void createAcl(String sourceId, PermType perm, String targetId) {
-        // Lucene does not index ACLs
+        updateAcl(sourceId, perm);
     }
 
     @Override
     public void deleteAcl(String sourceId, PermType perm, String targetId) {
-        // Lucene does not index ACLs
+        updateAcl(sourceId, perm);
+    }
+
+    /**
+     * Reindex the ACL of a document.
+     * ACL on tags are resolved at search time, nothing to reindex.
+     *
+     * @param sourceId Source ID
+     * @param perm Permission type
+     */
+    private void updateAcl(String sourceId, PermType perm) {
+        if (perm != PermType.READ) {
+            return;
+        }
+        Document document = new DocumentDao().getById(sourceId);
+        if (document != null) {
+            updateDocument(document);
+        } else {
+            // ACL on a tag, the documents visible through this tag have changed
+            invalidateSearchCache();
+        }
     }
 
     @Override
     public void findByCriteria(PaginatedList<DocumentDto> paginatedList, List<String> suggestionList, DocumentCriteria criteria, SortCriteria sortCriteria) throws Exception {
+        Query searchQuery = null;
+        if (!Strings.isNullOrEmpty(criteria.getSimpleSearch()) || !Strings.isNullOrEmpty(criteria.getFullSearch())) {
+            searchQuery = buildSearchQuery(criteria.getSimpleSearch(), criteria.getFullSearch(), criteria.getLanguage());
+            suggestSearchTerms(criteria.getFullSearch(), suggestionList);
+        }
+
+        // Ordered IDs of the documents, sliced from the cached results if the page is in the cached window
+        int offset = paginatedList.getOffset();
+        int limit = paginatedList.getLimit();
+        SearchResultCache.SearchResult searchResult;
+        if (searchResultCache != null && offset + limit <= SearchResultCache.RESULT_WINDOW) {
+            final Query windowSearchQuery = searchQuery;
+            searchResult = searchResultCache.get(criteria, sortCriteria,
+                    () -> findDocumentIds(criteria, sortCriteria, windowSearchQuery, 0, SearchResultCache.RESULT_WINDOW));
+        } else {
+            searchResult = findDocumentIds(criteria, sortCriteria, searchQuery, offset, limit);
+            offset = 0;
+        }
+        List<String> resultIdList = searchResult.getDocumentIdList();
+        List<String> documentIdList = resultIdList.subList(Math.min(offset, resultIdList.size()), Math.min(offset + limit, resultIdList.size()));
+        paginatedList.setResultCount(searchResult.getResultCount());
+
+        // Load the documents of the page from the database
+        List<DocumentDto> documentDtoList = getDocumentList(documentIdList, criteria.getTargetIdList());
+
+        // Highlight only the documents of the requested page
+        if (searchQuery != null && !documentDtoList.isEmpty()) {
+            highlight(searchQuery, documentDtoList);
+        }
+
+        paginatedList.setResultList(documentDtoList);
+    }
+
+    /**
+     * Searches the ordered IDs of the documents matching the criteria.
+     *
+     * @param criteria Search criteria
+     * @param sortCriteria Sort criteria
+     * @param searchQuery Fulltext query, null if none
+     * @param offset Offset of the first result
+     * @param limit Maximum number of results
+     * @return Search result
+     * @throws Exception e
+     */
+    private SearchResultCache.SearchResult findDocumentIds(DocumentCriteria criteria, SortCriteria sortCriteria, Query searchQuery, int offset, int limit) throws Exception {
+        if (luceneFiltering && isLuceneSearchable(criteria, sortCriteria)) {
+            return findDocumentIdsInLucene(criteria, sortCriteria, searchQuery, offset, limit);
+        }
+        return findDocumentIdsInDatabase(criteria, sortCriteria, searchQuery, offset, limit);
+    }
+
+    /**
+     * Searches the ordered IDs of the documents in the database.
+     * Only the fulltext query is resolved by Lucene.
+     *
+     * @param criteria Search criteria
+     * @param sortCriteria Sort criteria
+     * @param searchQuery Fulltext query, null if none
+     * @param offset Offset of the first result
+     * @param limit Maximum number of results
+     * @return Search result
+     * @throws Exception e
+     */
+    private SearchResultCache.SearchResult findDocumentIdsInDatabase(DocumentCriteria criteria, SortCriteria sortCriteria, Query searchQuery, int offset, int limit) throws Exception {
         Map<String, Object> parameterMap = new HashMap<>();
         List<String> criteriaList = new ArrayList<>();
-        Map<String, String> documentSearchMap = Maps.newHashMap();
 
-        StringBuilder sb = new StringBuilder("select distinct d.DOC_ID_C c0, d.DOC_TITLE_C c1, d.DOC_DESCRIPTION_C c2, d.DOC_CREATEDATE_D c3, d.DOC_LANGUAGE_C c4, d.DOC_IDFILE_C, ");
-        sb.append(" s.count c5, ");
-        sb.append(" rs2.RTP_ID_C c7, rs2.RTP_NAME_C, d.DOC_UPDATEDATE_D c8 ");
-        sb.append(" from T_DOCUMENT d ");
-        sb.append(" left join (SELECT count(s.SHA_ID_C) count, ac.ACL_SOURCEID_C " +
-                "   FROM T_SHARE s, T_ACL ac " +
-                "   WHERE ac.ACL_TARGETID_C = s.SHA_ID_C AND ac.ACL_DELETEDATE_D IS NULL AND " +
-                "         s.SHA_DELETEDATE_D IS NULL group by ac.ACL_SOURCEID_C) s on s.ACL_SOURCEID_C = d.DOC_ID_C ");
-        sb.append(" left join (select rs.*, rs3.idDocument " +
-                "from T_ROUTE_STEP rs " +
-                "join (select r.RTE_IDDOCUMENT_C idDocument, rs.RTP_IDROUTE_C idRoute, min(rs.RTP_ORDER_N) minOrder from T_ROUTE_STEP rs join T_ROUTE r on r.RTE_ID_C = rs.RTP_IDROUTE_C and r.RTE_DELETEDATE_D is null where rs.RTP_DELETEDATE_D is null and rs.RTP_ENDDATE_D is null group by rs.RTP_IDROUTE_C, r.RTE_IDDOCUMENT_C) rs3 on rs.RTP_IDROUTE_C = rs3.idRoute and rs.RTP_ORDER_N = rs3.minOrder " +
-                "where rs.RTP_IDTARGET_C in (:targetIdList)) rs2 on rs2.idDocument = d.DOC_ID_C ");
+        StringBuilder sb = buildDocumentSelect();
 
         // Add search criterias
         if (!SecurityUtil.skipAclCheck(criteria.getTargetIdList())) {
@@ -276,16 +889,14 @@ public class LuceneIndexingHandler implements IndexingHandler {
             criteriaList.add("(a.ACL_ID_C is not null or a2.ACL_ID_C is not null)");
         }
         parameterMap.put("targetIdList", criteria.getTargetIdList());
-        if (!Strings.isNullOrEmpty(criteria.getSimpleSearch()) || !Strings.isNullOrEmpty(criteria.getFullSearch())) {
-            documentSearchMap = search(criteria.getSimpleSearch(), criteria.getFullSearch());
-            if (documentSearchMap.isEmpty()) {
+        if (searchQuery != null) {
+            Set<String> documentIdSet = search(searchQuery);
+            if (documentIdSet.isEmpty()) {
                 // If the search doesn't find any document, the request should return nothing
-                documentSearchMap.put(UUID.randomUUID().toString(), null);
+                documentIdSet.add(UUID.randomUUID().toString());
             }
             criteriaList.add("d.DOC_ID_C in :documentIdList");
-            parameterMap.put("documentIdList", documentSearchMap.keySet());
-
-            suggestSearchTerms(criteria.getFullSearch(), suggestionList);
+            parameterMap.put("documentIdList", documentIdSet);
         }
         if (criteria.getCreateDateMin() != null) {
             criteriaList.add("d.DOC_CREATEDATE_D >= :createDateMin");
@@ -360,9 +971,222 @@ public class LuceneIndexingHandler implements IndexingHandler {
 
         // Perform the search
         QueryParam queryParam = new QueryParam(sb.toString(), parameterMap);
-        List<Object[]> l = PaginatedLists.executePaginatedQuery(paginatedList, queryParam, sortCriteria);
+        PaginatedList<String> idList = new PaginatedList<>(limit, offset);
+        List<Object[]> l = PaginatedLists.executePaginatedQuery(idList, queryParam, sortCriteria);
+        List<String> documentIdList = l.stream()
+                .map(o -> (String) o[0])
+                .collect(Collectors.toList());
+        return new SearchResultCache.SearchResult(documentIdList, idList.getResultCount());
+    }
+
+    /**
+     * Returns true if the search criteria and the sort can be resolved by Lucene.
+     * Shares count and active routes are only known by the database.
+     *
+     * @param criteria Search criteria
+     * @param sortCriteria Sort criteria
+     * @return True if searchable in Lucene
+     */
+    private boolean isLuceneSearchable(DocumentCriteria criteria, SortCriteria sortCriteria) {
+        if (criteria.getActiveRoute() != null && criteria.getActiveRoute()) {
+            return false;
+        }
+        return sortCriteria == null || SORT_FIELD_MAP.containsKey(sortCriteria.getColumn());
+    }
+
+    /**
+     * Searches the ordered IDs of the documents fully in Lucene.
+     *
+     * @param criteria Search criteria
+     * @param sortCriteria Sort criteria
+     * @param searchQuery Fulltext query, null if none
+     * @param offset Offset of the first result
+     * @param limit Maximum number of results
+     * @return Search result
+     * @throws Exception e
+     */
+    private SearchResultCache.SearchResult findDocumentIdsInLucene(DocumentCriteria criteria, SortCriteria sortCriteria, Query searchQuery, int offset, int limit) throws Exception {
+        BooleanQuery.Builder builder = new BooleanQuery.Builder()
+                .add(new TermQuery(new Term("doctype", "document")), BooleanClause.Occur.FILTER);
+
+        // Read permission on the document or on one of its tags
+        if (!SecurityUtil.skipAclCheck(criteria.getTargetIdList())) {
+            List<TagDto> tagDtoList = new TagDao().findByCriteria(new TagCriteria().setTargetIdList(criteria.getTargetIdList()), null);
+            builder.add(new BooleanQuery.Builder()
+                    .add(newTermInSetQuery("acl", criteria.getTargetIdList()), BooleanClause.Occur.SHOULD)
+                    .add(newTermInSetQuery("tag", tagDtoList.stream().map(TagDto::getId).collect(Collectors.toList())), BooleanClause.Occur.SHOULD)
+                    .build(), BooleanClause.Occur.FILTER);
+        }
+
+        // Fulltext search, on the document or on one of its files
+        if (searchQuery != null) {
+            Set<String> fileDocumentIdSet = search(new BooleanQuery.Builder()
+                    .add(searchQuery, BooleanClause.Occur.MUST)
+                    .add(new TermQuery(new Term("doctype", "file")), BooleanClause.Occur.FILTER)
+                    .build());
+            builder.add(new BooleanQuery.Builder()
+                    .add(searchQuery, BooleanClause.Occur.SHOULD)
+                    .add(newTermInSetQuery("id", fileDocumentIdSet), BooleanClause.Occur.SHOULD)
+                    .build(), BooleanClause.Occur.FILTER);
+        }
+
+        // Other criteria
+        if (criteria.getCreateDateMin() != null || criteria.getCreateDateMax() != null) {
+            builder.add(newDateRangeQuery("create_date", criteria.getCreateDateMin(), criteria.getCreateDateMax()), BooleanClause.Occur.FILTER);
+        }
+        if (criteria.getUpdateDateMin() != null || criteria.getUpdateDateMax() != null) {
+            builder.add(newDateRangeQuery("update_date", criteria.getUpdateDateMin(), criteria.getUpdateDateMax()), BooleanClause.Occur.FILTER);
+        }
+        if (!criteria.getTitleList().isEmpty()) {
+            builder.add(newTermInSetQuery("title_raw", criteria.getTitleList()), BooleanClause.Occur.FILTER);
+        }
+        for (List<String> tagIdList : criteria.getTagIdList()) {
+            builder.add(newTermInSetQuery("tag", tagIdList), BooleanClause.Occur.FILTER);
+        }
+        for (List<String> tagIdList : criteria.getExcludedTagIdList()) {
+            builder.add(newTermInSetQuery("tag", tagIdList), BooleanClause.Occur.MUST_NOT);
+        }
+        if (criteria.getShared() != null && criteria.getShared()) {
+            builder.add(new TermQuery(new Term("shared", "true")), BooleanClause.Occur.FILTER);
+        }
+        if (criteria.getMimeType() != null) {
+            builder.add(new TermQuery(new Term("mimetype", criteria.getMimeType())), BooleanClause.Occur.FILTER);
+        }
+        if (criteria.getLanguage() != null) {
+            builder.add(new TermQuery(new Term("language", criteria.getLanguage())), BooleanClause.Occur.FILTER);
+        }
+        if (criteria.getCreatorId() != null) {
+            builder.add(new TermQuery(new Term("creator", criteria.getCreatorId())), BooleanClause.Occur.FILTER);
+        }
+
+        // Sort and paginate
+        List<SortField> sortFieldList = new ArrayList<>();
+        if (sortCriteria != null) {
+            SortField sortField = SORT_FIELD_MAP.get(sortCriteria.getColumn());
+            sortField = new SortField(sortField.getField(), sortField.getType(), !sortCriteria.isAsc());
+            sortField.setMissingValue(sortField.getType() == SortField.Type.STRING ? SortField.STRING_LAST : 0L);
+            sortFieldList.add(sortField);
+        }
+        sortFieldList.add(new SortField("document_id", SortField.Type.STRING));
+        Sort sort = new Sort(sortFieldList.toArray(new SortField[0]));
+
+        List<String> documentIdList = new ArrayList<>();
+        IndexSearcher searcher = acquireSearcher();
+        try {
+            TopFieldCollector collector = TopFieldCollector.create(sort, Math.max(offset + limit, 1), Integer.MAX_VALUE);
+            searcher.search(builder.build(), collector);
+            TopDocs topDocs = collector.topDocs(offset, limit);
+            for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+                documentIdList.add(getDocumentId(searcher, scoreDoc.doc));
+            }
+            return new SearchResultCache.SearchResult(documentIdList, (int) topDocs.totalHits.value);
+        } finally {
+            releaseSearcher(searcher);
+        }
+    }
+
+    /**
+     * Load documents from the database, in the order of their IDs.
+     *
+     * @param documentIdList Documents IDs
+     * @param targetIdList Targets of the current user
+     * @return Documents
+     */
+    private List<DocumentDto> getDocumentList(List<String> documentIdList, List<String> targetIdList) {
+        List<DocumentDto> documentDtoList = new ArrayList<>();
+        if (documentIdList.isEmpty()) {
+            return documentDtoList;
+        }
+
+        StringBuilder sb = buildDocumentSelect();
+        sb.append(" where d.DOC_ID_C in :documentIdList and d.DOC_DELETEDATE_D is null ");
+        Map<String, Object> parameterMap = new HashMap<>();
+        parameterMap.put("targetIdList", targetIdList);
+        parameterMap.put("documentIdList", documentIdList);
+        @SuppressWarnings("unchecked")
+        List<Object[]> l = QueryUtil.getNativeQuery(new QueryParam(sb.toString(), parameterMap)).getResultList();
+        Map<String, DocumentDto> documentDtoMap = assembleResults(l).stream()
+                .collect(Collectors.toMap(DocumentDto::getId, documentDto -> documentDto, (documentDto1, documentDto2) -> documentDto1));
+        for (String documentId : documentIdList) {
+            DocumentDto documentDto = documentDtoMap.get(documentId);
+            if (documentDto != null) {
+                documentDtoList.add(documentDto);
+            }
+        }
+        return documentDtoList;
+    }
+
+    /**
+     * Returns the ID of the database document of a Lucene document.
+     *
+     * @param searcher Index searcher
+     * @param doc Lucene document number
+     * @return Document ID
+     * @throws IOException e
+     */
+    private String getDocumentId(IndexSearcher searcher, int doc) throws IOException {
+        List<LeafReaderContext> leafList = searcher.getIndexReader().leaves();
+        LeafReaderContext leaf = leafList.get(ReaderUtil.subIndex(doc, leafList));
+        SortedDocValues docValues = DocValues.getSorted(leaf.reader(), "document_id");
+        if (!docValues.advanceExact(doc - leaf.docBase)) {
+            return null;
+        }
+        return docValues.lookupOrd(docValues.ordValue()).utf8ToString();
+    }
+
+    /**
+     * Build a query matching a field against a set of terms.
+     *
+     * @param field Field
+     * @param valueList Values
+     * @return Lucene query
+     */
+    private Query newTermInSetQuery(String field, Collection<String> valueList) {
+        return new TermInSetQuery(field, valueList.stream().map(BytesRef::new).collect(Collectors.toList()));
+    }
+
+    /**
+     * Build a query on a date range, bounds are inclusive.
+     *
+     * @param field Field
+     * @param min Minimum date, can be null
+     * @param max Maximum date, can be null
+     * @return Lucene query
+     */
+    private Query newDateRangeQuery(String field, Date min, Date max) {
+        return LongPoint.newRangeQuery(field,
+                min == null ? Long.MIN_VALUE : min.getTime(),
+                max == null ? Long.MAX_VALUE : max.getTime());
+    }
+
+    /**
+     * Build the base query selecting the documents data.
+     *
+     * @return Query
+     */
+    private StringBuilder buildDocumentSelect() {
+        StringBuilder sb = new StringBuilder("select distinct d.DOC_ID_C c0, d.DOC_TITLE_C c1, d.DOC_DESCRIPTION_C c2, d.DOC_CREATEDATE_D c3, d.DOC_LANGUAGE_C c4, d.DOC_IDFILE_C, ");
+        sb.append(" s.count c5, ");
+        sb.append(" rs2.RTP_ID_C c7, rs2.RTP_NAME_C, d.DOC_UPDATEDATE_D c8 ");
+        sb.append(" from T_DOCUMENT d ");
+        sb.append(" left join (SELECT count(s.SHA_ID_C) count, ac.ACL_SOURCEID_C " +
+                "   FROM T_SHARE s, T_ACL ac " +
+                "   WHERE ac.ACL_TARGETID_C = s.SHA_ID_C AND ac.ACL_DELETEDATE_D IS NULL AND " +
+                "         s.SHA_DELETEDATE_D IS NULL group by ac.ACL_SOURCEID_C) s on s.ACL_SOURCEID_C = d.DOC_ID_C ");
+        sb.append(" left join (select rs.*, rs3.idDocument " +
+                "from T_ROUTE_STEP rs " +
+                "join (select r.RTE_IDDOCUMENT_C idDocument, rs.RTP_IDROUTE_C idRoute, min(rs.RTP_ORDER_N) minOrder from T_ROUTE_STEP rs join T_ROUTE r on r.RTE_ID_C = rs.RTP_IDROUTE_C and r.RTE_DELETEDATE_D is null where rs.RTP_DELETEDATE_D is null and rs.RTP_ENDDATE_D is null group by rs.RTP_IDROUTE_C, r.RTE_IDDOCUMENT_C) rs3 on rs.RTP_IDROUTE_C = rs3.idRoute and rs.RTP_ORDER_N = rs3.minOrder " +
+                "where rs.RTP_IDTARGET_C in (:targetIdList)) rs2 on rs2.idDocument = d.DOC_ID_C ");
+        return sb;
+    }
 
-        // Assemble results
+    /**
+     * Assemble the documents from the query results.
+     *
+     * @param l Query results
+     * @return Documents
+     */
+    private List<DocumentDto> assembleResults(List<Object[]> l) {
         List<DocumentDto> documentDtoList = new ArrayList<>();
         for (Object[] o : l) {
             int i = 0;
@@ -378,11 +1202,9 @@ public class LuceneIndexingHandler implements IndexingHandler {
             documentDto.setActiveRoute(o[i++] != null);
             documentDto.setCurrentStepName((String) o[i++]);
             documentDto.setUpdateTimestamp(((Timestamp) o[i]).getTime());
-            documentDto.setHighlight(documentSearchMap.get(documentDto.getId()));
             documentDtoList.add(documentDto);
         }
-
-        paginatedList.setResultList(documentDtoList);
+        return documentDtoList;
     }
 
     /**
@@ -393,39 +1215,31 @@ public class LuceneIndexingHandler implements IndexingHandler {
      * @throws Exception e
      */
     private void suggestSearchTerms(String search, List<String> suggestionList) throws Exception {
-        DirectoryReader directoryReader = getDirectoryReader();
-        if (directoryReader == null) {
-            return;
-        }
-
-        FuzzySuggester suggester = new FuzzySuggester(directory, "", new StandardAnalyzer());
-        LuceneDictionary dictionary = new LuceneDictionary(directoryReader, "title");
-        suggester.build(dictionary);
         int lastIndex = search.lastIndexOf(' ');
         String suggestQuery = search.substring(Math.max(lastIndex, 0));
-        List<Lookup.LookupResult> lookupResultList = suggester.lookup(suggestQuery, false, 10);
-        for (Lookup.LookupResult lookupResult : lookupResultList) {
-            suggestionList.add(lookupResult.key.toString());
+        indexLock.readLock().lock();
+        try {
+            suggestionList.addAll(searchSuggester.lookup(suggestQuery, 10));
+        } finally {
+            indexLock.readLock().unlock();
         }
     }
 
     /**
-     * Fulltext search in files and documents.
+     * Build the fulltext query on files and documents.
      *
      * @param simpleSearchQuery Search query on metadatas
      * @param fullSearchQuery Search query on all fields
-     * @return Map of document IDs as key and highlight as value
-     * @throws Exception e
+     * @param language Language of the searched documents, null to search in all languages
+     * @return Lucene query
+     * @throws IOException e
      */
-    private Map<String, String> search(String simpleSearchQuery, String fullSearchQuery) throws Exception {
+    private Query buildSearchQuery(String simpleSearchQuery, String fullSearchQuery, String language) throws IOException {
         // The fulltext query searches in all fields
         String searchQuery = simpleSearchQuery + " " + fullSearchQuery;
 
-        // Build search query
-        Analyzer analyzer = new StandardAnalyzer();
-
         // Search on documents and files
-        BooleanQuery query = new BooleanQuery.Builder()
+        BooleanQuery.Builder builder = new BooleanQuery.Builder()
                 .add(buildQueryParser(analyzer, "title").parse(searchQuery), BooleanClause.Occur.SHOULD)
                 .add(buildQueryParser(analyzer, "description").parse(searchQuery), BooleanClause.Occur.SHOULD)
                 .add(buildQueryParser(analyzer, "subject").parse(searchQuery), BooleanClause.Occur.SHOULD)
@@ -437,46 +1251,128 @@ public class LuceneIndexingHandler implements IndexingHandler {
                 .add(buildQueryParser(analyzer, "coverage").parse(searchQuery), BooleanClause.Occur.SHOULD)
                 .add(buildQueryParser(analyzer, "rights").parse(searchQuery), BooleanClause.Occur.SHOULD)
                 .add(buildQueryParser(analyzer, "filename").parse(searchQuery), BooleanClause.Occur.SHOULD)
-                .add(buildQueryParser(analyzer, "content").parse(fullSearchQuery), BooleanClause.Occur.SHOULD)
-                .build();
-
-        // Search
-        DirectoryReader directoryReader = getDirectoryReader();
-        Map<String, String> documentMap = Maps.newHashMap();
-        if (directoryReader == null) {
-            // The directory reader is not yet initialized (probably because there is nothing indexed)
-            return documentMap;
-        }
-        IndexSearcher searcher = new IndexSearcher(directoryReader);
-        TopDocs topDocs = searcher.search(query, Integer.MAX_VALUE);
-        ScoreDoc[] docs = topDocs.scoreDocs;
-
-        SimpleHTMLFormatter simpleHTMLFormatter = new SimpleHTMLFormatter("<strong>", "</strong>");
-        SimpleHTMLEncoder simpleHTMLEncoder = new SimpleHTMLEncoder();
-        Highlighter highlighter = new Highlighter(simpleHTMLFormatter, simpleHTMLEncoder, new QueryScorer(query));
-
-        // Extract document IDs and highlights
-        for (ScoreDoc doc : docs) {
-            org.apache.lucene.document.Document document = searcher.doc(doc.doc);
-            String type = document.get("doctype");
-            String documentId = null;
-            String highlight = null;
-            if (type.equals("document")) {
-                documentId = document.get("id");
-            } else if (type.equals("file")) {
-                documentId = document.get("document_id");
-                String content = document.get("content");
-                if (content != null) {
-                    highlight = highlighter.getBestFragment(analyzer, "content", content);
-                }
+                .add(buildQueryParser(analyzer, "content").parse(fullSearchQuery), BooleanClause.Occur.SHOULD);
+
+        // Search on the stemmed fields, of the languages present in the index
+        Collection<String> languageList = language == null ? getIndexedLanguages() : Collections.singleton(language);
+        for (String searchLanguage : languageList) {
+            String contentField = LanguageAnalyzer.getLanguageField("content", searchLanguage);
+            if (contentField == null) {
+                continue;
             }
+            for (String field : DOCUMENT_LANGUAGE_FIELDS) {
+                builder.add(buildQueryParser(analyzer, LanguageAnalyzer.getLanguageField(field, searchLanguage)).parse(searchQuery), BooleanClause.Occur.SHOULD);
+            }
+            builder.add(buildQueryParser(analyzer, contentField).parse(fullSearchQuery), BooleanClause.Occur.SHOULD);
+        }
+        return builder.build();
+    }
 
-            if (documentId != null) {
-                documentMap.put(documentId, highlight);
+    /**
+     * Returns the languages of the indexed documents, from the terms of the language field.
+     *
+     * @return Languages
+     * @throws IOException e
+     */
+    private Set<String> getIndexedLanguages() throws IOException {
+        IndexSearcher searcher = acquireSearcher();
+        try {
+            Set<String> languageSet = new HashSet<>();
+            Terms terms = MultiTerms.getTerms(searcher.getIndexReader(), "language");
+            if (terms != null) {
+                TermsEnum termsEnum = terms.iterator();
+                BytesRef term;
+                while ((term = termsEnum.next()) != null) {
+                    languageSet.add(term.utf8ToString());
+                }
             }
+            return languageSet;
+        } finally {
+            releaseSearcher(searcher);
         }
+    }
 
-        return documentMap;
+    /**
+     * Fulltext search in files and documents.
+     * Only the document IDs are collected, from the doc values.
+     *
+     * @param query Fulltext query
+     * @return Set of matching document IDs
+     * @throws Exception e
+     */
+    private Set<String> search(Query query) throws Exception {
+        IndexSearcher searcher = acquireSearcher();
+        try {
+            DocumentIdCollector collector = new DocumentIdCollector("document_id");
+            searcher.search(query, collector);
+            return collector.getDocumentIdSet();
+        } finally {
+            releaseSearcher(searcher);
+        }
+    }
+
+    /**
+     * Highlight the content of the best matching file of each document.
+     *
+     * @param query Fulltext query
+     * @param documentDtoList Documents to highlight (updated by side effects)
+     * @throws Exception e
+     */
+    private void highlight(Query query, List<DocumentDto> documentDtoList) throws Exception {
+        IndexSearcher searcher = acquireSearcher();
+        try {
+            // Best file hits of each document
+            Map<String, List<Integer>> fileDocMap = new HashMap<>();
+            Map<Integer, String> fileIdMap = new HashMap<>();
+            for (DocumentDto documentDto : documentDtoList) {
+                Query fileQuery = new BooleanQuery.Builder()
+                        .add(query, BooleanClause.Occur.MUST)
+                        .add(new TermQuery(new Term("doctype", "file")), BooleanClause.Occur.FILTER)
+                        .add(new TermQuery(new Term("document_id", documentDto.getId())), BooleanClause.Occur.FILTER)
+                        .build();
+                TopDocs topDocs = searcher.search(fileQuery, HIGHLIGHT_MAX_HITS);
+                List<Integer> docList = new ArrayList<>();
+                for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+                    docList.add(scoreDoc.doc);
+                    fileIdMap.put(scoreDoc.doc, searcher.doc(scoreDoc.doc, Collections.singleton("id")).get("id"));
+                }
+                fileDocMap.put(documentDto.getId(), docList);
+            }
+            if (fileIdMap.isEmpty()) {
+                return;
+            }
+
+            // The content is not stored in the index, load it from the database
+            Map<String, String> contentByFileIdMap = new FileDao().getContentById(fileIdMap.values());
+            Map<Integer, String> contentMap = new HashMap<>();
+            for (Map.Entry<Integer, String> entry : fileIdMap.entrySet()) {
+                contentMap.put(entry.getKey(), contentByFileIdMap.get(entry.getValue()));
+            }
+
+            // Highlight all the files at once, using the offsets indexed in the postings
+            int[] docIds = fileIdMap.keySet().stream().mapToInt(Integer::intValue).toArray();
+            int[] maxPassages = new int[docIds.length];
+            Arrays.fill(maxPassages, 1);
+            ContentHighlighter highlighter = new ContentHighlighter(searcher, analyzer, contentMap);
+            String[] highlights = highlighter.highlightFields(new String[] { "content" }, query, docIds, maxPassages).get("content");
+            Map<Integer, String> highlightMap = new HashMap<>();
+            for (int i = 0; i < docIds.length; i++) {
+                highlightMap.put(docIds[i], highlights[i]);
+            }
+
+            // Keep the first highlighted file of each document
+            for (DocumentDto documentDto : documentDtoList) {
+                for (Integer doc : fileDocMap.get(documentDto.getId())) {
+                    String highlight = highlightMap.get(doc);
+                    if (highlight != null) {
+                        documentDto.setHighlight(highlight);
+                        break;
+                    }
+                }
+            }
+        } finally {
+            releaseSearcher(searcher);
+        }
     }
 
     /**
@@ -502,7 +1398,9 @@ public class LuceneIndexingHandler implements IndexingHandler {
         org.apache.lucene.document.Document luceneDocument = new org.apache.lucene.document.Document();
         luceneDocument.add(new StringField("id", document.getId(), Field.Store.YES));
         luceneDocument.add(new StringField("doctype", "document", Field.Store.YES));
+        luceneDocument.add(new SortedDocValuesField("document_id", new BytesRef(document.getId())));
         luceneDocument.add(new TextField("title", document.getTitle(), Field.Store.NO));
+        addFilterFields(luceneDocument, document);
         if (document.getDescription() != null) {
             luceneDocument.add(new TextField("description", document.getDescription(), Field.Store.NO));
         }
@@ -530,10 +1428,59 @@ public class LuceneIndexingHandler implements IndexingHandler {
         if (document.getRights() != null) {
             luceneDocument.add(new TextField("rights", document.getRights(), Field.Store.NO));
         }
+        addLanguageField(luceneDocument, "title", document.getTitle(), document.getLanguage());
+        addLanguageField(luceneDocument, "description", document.getDescription(), document.getLanguage());
+        addLanguageField(luceneDocument, "subject", document.getSubject(), document.getLanguage());
 
         return luceneDocument;
     }
 
+    /**
+     * Add the fields used to filter and sort documents in Lucene.
+     *
+     * @param luceneDocument Lucene document
+     * @param document Document
+     */
+    private void addFilterFields(org.apache.lucene.document.Document luceneDocument, Document document) {
+        luceneDocument.add(new StringField("title_raw", document.getTitle(), Field.Store.NO));
+        luceneDocument.add(new SortedDocValuesField("title_raw", new BytesRef(document.getTitle())));
+        if (document.getDescription() != null) {
+            luceneDocument.add(new SortedDocValuesField("description_raw", new BytesRef(document.getDescription())));
+        }
+        luceneDocument.add(new StringField("language", document.getLanguage(), Field.Store.NO));
+        luceneDocument.add(new SortedDocValuesField("language", new BytesRef(document.getLanguage())));
+        luceneDocument.add(new StringField("creator", document.getUserId(), Field.Store.NO));
+        luceneDocument.add(new LongPoint("create_date", document.getCreateDate().getTime()));
+        luceneDocument.add(new NumericDocValuesField("create_date", document.getCreateDate().getTime()));
+        if (document.getUpdateDate() != null) {
+            luceneDocument.add(new LongPoint("update_date", document.getUpdateDate().getTime()));
+            luceneDocument.add(new NumericDocValuesField("update_date", document.getUpdateDate().getTime()));
+        }
+
+        // Targets having a read permission on the document
+        boolean shared = false;
+        for (AclDto aclDto : new AclDao().getBySourceId(document.getId(), null)) {
+            if (aclDto.getPerm() == PermType.READ) {
+                luceneDocument.add(new StringField("acl", aclDto.getTargetId(), Field.Store.NO));
+                shared |= AclTargetType.SHARE.name().equals(aclDto.getTargetType());
+            }
+        }
+        luceneDocument.add(new StringField("shared", Boolean.toString(shared), Field.Store.NO));
+
+        // Tags, also used to check the read permission inherited from tags
+        for (TagDto tagDto : new TagDao().findByCriteria(new TagCriteria().setDocumentId(document.getId()), null)) {
+            luceneDocument.add(new StringField("tag", tagDto.getId(), Field.Store.NO));
+        }
+
+        // MIME types of the files
+        Set<String> mimeTypeSet = new HashSet<>();
+        for (File file : new FileDao().getByDocumentId(null, document.getId())) {
+            if (file.getMimeType() != null && mimeTypeSet.add(file.getMimeType())) {
+                luceneDocument.add(new StringField("mimetype", file.getMimeType(), Field.Store.NO));
+            }
+        }
+    }
+
     /**
      * Build Lucene document from file.
      *
@@ -541,6 +1488,24 @@ public class LuceneIndexingHandler implements IndexingHandler {
      * @return Document
      */
     private org.apache.lucene.document.Document getDocumentFromFile(File file) {
+        String language = null;
+        if (file.getDocumentId() != null && file.getContent() != null) {
+            Document document = new DocumentDao().getById(file.getDocumentId());
+            if (document != null) {
+                language = document.getLanguage();
+            }
+        }
+        return getDocumentFromFile(file, language);
+    }
+
+    /**
+     * Build Lucene document from file.
+     *
+     * @param file File
+     * @param language Language of the file document, null if unknown
+     * @return Document
+     */
+    private org.apache.lucene.document.Document getDocumentFromFile(File file, String language) {
         org.apache.lucene.document.Document luceneDocument = new org.apache.lucene.document.Document();
         luceneDocument.add(new StringField("id", file.getId(), Field.Store.YES));
         luceneDocument.add(new StringField("doctype", "file", Field.Store.YES));
@@ -549,61 +1514,115 @@ public class LuceneIndexingHandler implements IndexingHandler {
         }
         if (file.getDocumentId() != null) {
             luceneDocument.add(new StringField("document_id", file.getDocumentId(), Field.Store.YES));
+            luceneDocument.add(new SortedDocValuesField("document_id", new BytesRef(file.getDocumentId())));
         }
         if (file.getContent() != null) {
-            luceneDocument.add(new TextField("content", file.getContent(), Field.Store.YES));
+            luceneDocument.add(new Field("content", file.getContent(), CONTENT_FIELD_TYPE));
+            if (language != null) {
+                // The content is in the language of its document
+                addLanguageField(luceneDocument, "content", file.getContent(), language);
+            }
         }
 
         return luceneDocument;
     }
 
     /**
-     * Returns a valid directory reader.
-     * Take care of reopening the reader if the index has changed
-     * and closing the previous one.
+     * Add a field analyzed with the analysis chain of a language, if this language has one.
      *
-     * @return the directoryReader
+     * @param luceneDocument Lucene document
+     * @param field Field name
+     * @param value Value
+     * @param language Language
      */
-    private DirectoryReader getDirectoryReader() {
-        if (directoryReader == null) {
-            try {
-                if (!DirectoryReader.indexExists(directory)) {
-                    return null;
-                }
-                directoryReader = DirectoryReader.open(directory);
-            } catch (IOException e) {
-                log.error("Error creating the directory reader", e);
-            }
-        } else {
+    private void addLanguageField(org.apache.lucene.document.Document luceneDocument, String field, String value, String language) {
+        String languageField = LanguageAnalyzer.getLanguageField(field, language);
+        if (value != null && languageField != null) {
+            luceneDocument.add(new TextField(languageField, value, Field.Store.NO));
+        }
+    }
+
+    /**
+     * Acquire a searcher seeing all the changes written so far.
+     * The searcher must be released with {@link #releaseSearcher(IndexSearcher)} after use.
+     *
+     * @return Index searcher
+     * @throws IOException e
+     */
+    private IndexSearcher acquireSearcher() throws IOException {
+        indexLock.readLock().lock();
+        try {
             try {
-                DirectoryReader newReader = DirectoryReader.openIfChanged(directoryReader);
-                if (newReader != null) {
-                    directoryReader.close();
-                    directoryReader = newReader;
-                }
-            } catch (IOException e) {
-                log.error("Error while reopening the directory reader", e);
+                reopenThread.waitForGeneration(indexWriter.getMaxCompletedSequenceNumber());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
+            return searcherManager.acquire();
+        } catch (IOException | RuntimeException e) {
+            indexLock.readLock().unlock();
+            throw e;
+        }
+    }
+
+    /**
+     * Release a searcher acquired with {@link #acquireSearcher()}.
+     *
+     * @param searcher Index searcher
+     * @throws IOException e
+     */
+    private void releaseSearcher(IndexSearcher searcher) throws IOException {
+        try {
+            searcherManager.release(searcher);
+        } finally {
+            indexLock.readLock().unlock();
         }
-        return directoryReader;
     }
 
     /**
      * Encapsulate a process into a Lucene context.
+     * Changes are visible to searchers after the next refresh,
+     * and committed to the directory periodically.
+     * While the index is rebuilt, the changed ID is recorded to be replayed in the side index at the end,
+     * changes without ID are applied to both indexes.
      *
+     * @param id ID of the document or file changed, null if not applicable
      * @param runnable Runnable
      */
-    private void handle(LuceneRunnable runnable) {
+    private void handle(String id, LuceneRunnable runnable) {
+        indexLock.readLock().lock();
         try {
             runnable.run(indexWriter);
+            if (rebuildWriter != null) {
+                if (id == null) {
+                    runnable.run(rebuildWriter);
+                } else {
+                    rebuildChangedIdSet.add(id);
+                }
+            }
+            invalidateSearchCache();
         } catch (Exception e) {
             log.error("Error in running index writing", e);
+        } finally {
+            indexLock.readLock().unlock();
         }
+    }
 
+    /**
+     * Encapsulate a bulk indexing process into a Lucene context.
+     * While the index is rebuilt, the changes only go to the side index.
+     * Errors are thrown to the caller, so a rebuild missing some documents can be cancelled.
+     *
+     * @param runnable Runnable
+     */
+    private void handleBulk(LuceneRunnable runnable) {
+        indexLock.readLock().lock();
         try {
-            indexWriter.commit();
-        } catch (IOException e) {
-            log.error("Cannot commit index writer", e);
+            runnable.run(rebuildWriter == null ? indexWriter : rebuildWriter);
+            invalidateSearchCache();
+        } catch (Exception e) {
+            throw new IllegalStateException("Error in running bulk index writing", e);
+        } finally {
+            indexLock.readLock().unlock();
         }
     }
 
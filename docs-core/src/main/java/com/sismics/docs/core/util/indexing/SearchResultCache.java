@@ -0,0 +1,163 @@
+package com.sismics.docs.core.util.indexing;
+
+import com.google.common.base.Joiner;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.sismics.docs.core.dao.criteria.DocumentCriteria;
+import com.sismics.docs.core.util.jpa.SortCriteria;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of document search results.
+ * The ordered IDs of the first results and the total count are kept for each search,
+ * so the following pages don't need to search again.
+ * Any change in the index or in the documents database starts a new generation,
+ * older entries are never read again and are evicted.
+ */
+class SearchResultCache {
+    /**
+     * Maximum number of document IDs kept for each search.
+     */
+    static final int RESULT_WINDOW = 1000;
+
+    /**
+     * Cached results, least recently used evicted first.
+     */
+    private final Cache<String, SearchResult> cache;
+
+    /**
+     * Generation of the index content.
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * Constructor.
+     *
+     * @param maximumSize Maximum number of cached searches
+     */
+    SearchResultCache(long maximumSize) {
+        cache = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .build();
+    }
+
+    /**
+     * Invalidate all cached results.
+     * Must be called after the change is visible to the searches.
+     */
+    void invalidate() {
+        generation.incrementAndGet();
+    }
+
+    /**
+     * Returns the cached result of a search, or search and cache the result.
+     *
+     * @param criteria Search criteria
+     * @param sortCriteria Sort criteria
+     * @param loader Search to run if the result is not cached
+     * @return Search result
+     * @throws Exception e
+     */
+    SearchResult get(DocumentCriteria criteria, SortCriteria sortCriteria, Callable<SearchResult> loader) throws Exception {
+        try {
+            return cache.get(getKey(criteria, sortCriteria), loader);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+    }
+
+    /**
+     * Build the cache key of a search, independent of the criteria lists order.
+     *
+     * @param criteria Search criteria
+     * @param sortCriteria Sort criteria
+     * @return Cache key
+     */
+    private String getKey(DocumentCriteria criteria, SortCriteria sortCriteria) {
+        List<String> tagIdList = new ArrayList<>();
+        for (List<String> tagIdGroup : criteria.getTagIdList()) {
+            tagIdList.add(sorted(tagIdGroup));
+        }
+        List<String> excludedTagIdList = new ArrayList<>();
+        for (List<String> tagIdGroup : criteria.getExcludedTagIdList()) {
+            excludedTagIdList.add(sorted(tagIdGroup));
+        }
+        return Joiner.on('|').useForNull("").join(
+                generation.get(),
+                sorted(criteria.getTargetIdList()),
+                criteria.getSimpleSearch(),
+                criteria.getFullSearch(),
+                getTime(criteria.getCreateDateMin()),
+                getTime(criteria.getCreateDateMax()),
+                getTime(criteria.getUpdateDateMin()),
+                getTime(criteria.getUpdateDateMax()),
+                sorted(tagIdList),
+                sorted(excludedTagIdList),
+                criteria.getShared(),
+                criteria.getLanguage(),
+                criteria.getCreatorId(),
+                criteria.getActiveRoute(),
+                criteria.getMimeType(),
+                sorted(criteria.getTitleList()),
+                sortCriteria == null ? null : sortCriteria.getColumn(),
+                sortCriteria == null ? null : sortCriteria.isAsc());
+    }
+
+    /**
+     * Returns the sorted values of a collection.
+     *
+     * @param values Values
+     * @return Sorted values
+     */
+    private static String sorted(Collection<String> values) {
+        if (values == null) {
+            return null;
+        }
+        return "[" + Joiner.on(',').useForNull("").join(values.stream().sorted().iterator()) + "]";
+    }
+
+    /**
+     * Returns the time of a date.
+     *
+     * @param date Date
+     * @return Time in milliseconds, null if the date is null
+     */
+    private static Long getTime(Date date) {
+        return date == null ? null : date.getTime();
+    }
+
+    /**
+     * Result of a search.
+     */
+    static class SearchResult {
+        /**
+         * Ordered IDs of the first documents found.
+         */
+        private final List<String> documentIdList;
+
+        /**
+         * Total number of documents found.
+         */
+        private final int resultCount;
+
+        SearchResult(List<String> documentIdList, int resultCount) {
+            this.documentIdList = documentIdList;
+            this.resultCount = resultCount;
+        }
+
+        List<String> getDocumentIdList() {
+            return documentIdList;
+        }
+
+        int getResultCount() {
+            return resultCount;
+        }
+    }
+}
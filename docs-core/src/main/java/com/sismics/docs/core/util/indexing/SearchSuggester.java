@@ -0,0 +1,133 @@
+package com.sismics.docs.core.util.indexing;
+
+import com.google.common.util.concurrent.AbstractScheduledService;
+import com.sismics.util.EnvironmentUtil;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.spell.LuceneDictionary;
+import org.apache.lucene.search.suggest.Lookup;
+import org.apache.lucene.search.suggest.analyzing.FuzzySuggester;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service maintaining a search terms suggester on the document titles.
+ * The suggester is rebuilt in background when the index has changed,
+ * and swapped atomically so lookups never wait for a build.
+ */
+class SearchSuggester extends AbstractScheduledService {
+    /**
+     * Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(SearchSuggester.class);
+
+    /**
+     * Interval between two checks of the index version, in seconds.
+     */
+    private static final long REFRESH_INTERVAL = 30;
+
+    /**
+     * Searcher manager of the index.
+     */
+    private final SearcherManager searcherManager;
+
+    /**
+     * Current suggester, null until the first build.
+     */
+    private volatile Lookup suggester;
+
+    /**
+     * Version of the index reader used to build the current suggester.
+     */
+    private long indexVersion = -1;
+
+    /**
+     * Constructor.
+     *
+     * @param searcherManager Searcher manager of the index
+     */
+    SearchSuggester(SearcherManager searcherManager) {
+        this.searcherManager = searcherManager;
+    }
+
+    @Override
+    protected void startUp() {
+        log.info("Search suggester starting up");
+    }
+
+    @Override
+    protected void shutDown() {
+        log.info("Search suggester shutting down");
+    }
+
+    @Override
+    protected void runOneIteration() {
+        try {
+            refresh();
+        } catch (Throwable e) {
+            log.error("Exception during search suggester refresh", e);
+        }
+    }
+
+    /**
+     * Rebuild the suggester if the index has changed since the last build.
+     *
+     * @throws IOException e
+     */
+    synchronized void refresh() throws IOException {
+        IndexSearcher searcher = searcherManager.acquire();
+        try {
+            DirectoryReader directoryReader = (DirectoryReader) searcher.getIndexReader();
+            if (directoryReader.getVersion() == indexVersion) {
+                return;
+            }
+
+            long startTime = System.currentTimeMillis();
+            FuzzySuggester fuzzySuggester = new FuzzySuggester(new ByteBuffersDirectory(), "suggest", new StandardAnalyzer());
+            fuzzySuggester.build(new LuceneDictionary(directoryReader, "title"));
+            suggester = fuzzySuggester;
+            indexVersion = directoryReader.getVersion();
+            log.info("Search suggester built in {}ms", System.currentTimeMillis() - startTime);
+        } finally {
+            searcherManager.release(searcher);
+        }
+    }
+
+    /**
+     * Suggest search terms.
+     *
+     * @param query Query to complete
+     * @param count Maximum number of suggestions
+     * @return Suggestions
+     * @throws IOException e
+     */
+    List<String> lookup(String query, int count) throws IOException {
+        if (EnvironmentUtil.isUnitTest()) {
+            // Asynchronous events are synchronous in unit tests, so is the suggester
+            refresh();
+        }
+
+        List<String> suggestionList = new ArrayList<>();
+        Lookup lookup = suggester;
+        if (lookup == null) {
+            return suggestionList;
+        }
+        for (Lookup.LookupResult lookupResult : lookup.lookup(query, false, count)) {
+            suggestionList.add(lookupResult.key.toString());
+        }
+        return suggestionList;
+    }
+
+    @Override
+    protected Scheduler scheduler() {
+        return Scheduler.newFixedDelaySchedule(0, REFRESH_INTERVAL, TimeUnit.SECONDS);
+    }
+}
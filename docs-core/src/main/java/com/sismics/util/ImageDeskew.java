@@ -1,41 +1,49 @@
 package com.sismics.util;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
 
 /**
- * <a url=http://www.jdeskew.com/>JDeskew</a>
+ * Skew angle detection, based on <a url=http://www.jdeskew.com/>JDeskew</a>.
+ * The lower edges of the dark pixels are accumulated in a Hough transform:
+ * a first pass on a downscaled copy of the image finds the angle roughly,
+ * a second pass on the full image refines it around this angle.
  */
 public class ImageDeskew {
     /**
-     * Representation of a line in the image.
+     * Pixels with a lower luminance are considered black.
      */
-    public class HoughLine {
-
-        // count of points in the line
-        public int count = 0;
-        // index in matrix.
-        public int index = 0;
-        // the line is represented as all x, y that solve y * cos(alpha) - x *
-        // sin(alpha) = d
-        public double alpha;
-        public double d;
-    }
+    private static final int LUMINANCE_CUTOFF = 140;
+
+    /**
+     * Number of lines averaged to get the skew angle.
+     */
+    private static final int LINE_COUNT = 20;
+
+    /**
+     * Range of angles to search for lines, in both directions.
+     */
+    private static final double ALPHA_RANGE = 20;
+
+    /**
+     * Angle step of the first pass.
+     */
+    private static final double COARSE_ALPHA_STEP = 1;
+
+    /**
+     * Angle step of the second pass.
+     */
+    private static final double FINE_ALPHA_STEP = 0.1;
+
+    /**
+     * Approximate width of the downscaled copy.
+     */
+    private static final int COARSE_WIDTH = 1000;
 
     // the source image
-    private BufferedImage cImage;
-    // the range of angles to search for lines
-    private double cAlphaStart = -20;
-    private double cAlphaStep = 0.2;
-    private int cSteps = 40 * 5;
-    // pre-calculation of sin and cos
-    private double[] cSinA;
-    private double[] cCosA;
-    // range of d
-    private double cDMin;
-    private double cDStep = 1.0;
-    private int cDCount;
-    // count of points that fit in a line
-    private int[] cHMatrix;
+    private final BufferedImage cImage;
 
     // constructor
     public ImageDeskew(BufferedImage image) {
@@ -44,124 +52,199 @@ public class ImageDeskew {
 
     // calculate the skew angle of the image cImage
     public double getSkewAngle() {
-        ImageDeskew.HoughLine[] hl;
-        double sum = 0.0;
-        int count = 0;
-
-        // perform Hough Transformation
-        calc();
-        // top 20 of the detected lines in the image
-        hl = getTop(20);
-
-        if (hl.length >= 20) {
-            // average angle of the lines
-            for (int i = 0; i < 19; i++) {
-                sum += hl[i].alpha;
-                count++;
-            }
-            return (sum / count);
-        } else {
+        // only the middle half of the image is analyzed, with the row below it for the edges
+        int width = cImage.getWidth();
+        int hMin = (int) (cImage.getHeight() / 4.0);
+        int hMax = (int) (cImage.getHeight() * 3.0 / 4.0);
+        int height = Math.min(hMax - hMin + 1, cImage.getHeight() - hMin);
+        if (width < 4 || height < 2) {
             return 0.0d;
         }
-    }
-
-    // calculate the count lines in the image with most points
-    private ImageDeskew.HoughLine[] getTop(int count) {
-
-        ImageDeskew.HoughLine[] hl = new ImageDeskew.HoughLine[count];
-        for (int i = 0; i < count; i++) {
-            hl[i] = new ImageDeskew.HoughLine();
+        byte[] luminance = getLuminance(hMin, height);
+
+        // first pass on the downscaled copy
+        int scale = Math.max(1, width / COARSE_WIDTH);
+        int coarseWidth = width / scale;
+        int coarseHeight = height / scale;
+        double alpha = 0.0d;
+        if (coarseWidth >= 4 && coarseHeight >= 2) {
+            byte[] coarseLuminance = downscale(luminance, width, coarseWidth, coarseHeight, scale);
+            alpha = getSkewAngle(findEdges(coarseLuminance, coarseWidth, coarseHeight), coarseWidth, coarseHeight,
+                    -ALPHA_RANGE, ALPHA_RANGE, COARSE_ALPHA_STEP);
         }
 
-        ImageDeskew.HoughLine tmp;
-
-        for (int i = 0; i < (this.cHMatrix.length - 1); i++) {
-            if (this.cHMatrix[i] > hl[count - 1].count) {
-                hl[count - 1].count = this.cHMatrix[i];
-                hl[count - 1].index = i;
-                int j = count - 1;
-                while ((j > 0) && (hl[j].count > hl[j - 1].count)) {
-                    tmp = hl[j];
-                    hl[j] = hl[j - 1];
-                    hl[j - 1] = tmp;
-                    j--;
-                }
+        // second pass on the full image, around the angle found
+        return getSkewAngle(findEdges(luminance, width, height), width, height,
+                alpha - COARSE_ALPHA_STEP, alpha + COARSE_ALPHA_STEP, FINE_ALPHA_STEP);
+    }
+
+    /**
+     * Returns the luminance of a band of the image.
+     *
+     * @param y First row of the band
+     * @param height Height of the band
+     * @return Luminance of each pixel, row by row
+     */
+    private byte[] getLuminance(int y, int height) {
+        int width = cImage.getWidth();
+        byte[] luminance = new byte[width * height];
+        if (cImage.getType() == BufferedImage.TYPE_BYTE_GRAY) {
+            // gray samples are linear, they are converted to sRGB through a lookup table as getRGB would do
+            ColorModel colorModel = cImage.getColorModel();
+            byte[] lookup = new byte[256];
+            for (int i = 0; i < lookup.length; i++) {
+                lookup[i] = getLuminance(colorModel.getRGB(i));
+            }
+            cImage.getRaster().getDataElements(0, y, width, height, luminance);
+            for (int i = 0; i < luminance.length; i++) {
+                luminance[i] = lookup[luminance[i] & 0xff];
             }
+            return luminance;
         }
 
-        int alphaIndex;
-        int dIndex;
-
-        for (int i = 0; i < count; i++) {
-            dIndex = hl[i].index / cSteps; // integer division, no
-            // remainder
-            alphaIndex = hl[i].index - dIndex * cSteps;
-            hl[i].alpha = getAlpha(alphaIndex);
-            hl[i].d = dIndex + cDMin;
+        // packed RGB pixels are read from the raster as is, without the color model conversion of getRGB
+        int type = cImage.getType();
+        boolean packedRgb = type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB;
+        WritableRaster raster = cImage.getRaster();
+        int[] row = new int[width];
+        for (int j = 0; j < height; j++) {
+            if (packedRgb) {
+                raster.getDataElements(0, y + j, width, 1, row);
+            } else {
+                cImage.getRGB(0, y + j, width, 1, row, 0, width);
+            }
+            int offset = j * width;
+            for (int i = 0; i < width; i++) {
+                luminance[offset + i] = getLuminance(row[i]);
+            }
         }
+        return luminance;
+    }
 
-        return hl;
+    /**
+     * Returns the luminance of a sRGB pixel.
+     *
+     * @param rgb Packed RGB pixel
+     * @return Luminance
+     */
+    private static byte getLuminance(int rgb) {
+        return (byte) ((((rgb >> 16) & 0xff) * 299 + ((rgb >> 8) & 0xff) * 587 + (rgb & 0xff) * 114) / 1000);
     }
 
-    // Hough Transformation
-    private void calc() {
-        int hMin = (int) ((this.cImage.getHeight()) / 4.0);
-        int hMax = (int) ((this.cImage.getHeight()) * 3.0 / 4.0);
-        init();
-
-        for (int y = hMin; y < hMax; y++) {
-            for (int x = 1; x < (this.cImage.getWidth() - 2); x++) {
-                // only lower edges are considered
-                if (ImageUtil.isBlack(this.cImage, x, y)) {
-                    if (!ImageUtil.isBlack(this.cImage, x, y + 1)) {
-                        calc(x, y);
-                    }
+    /**
+     * Downscale luminance values, averaging each block of pixels.
+     *
+     * @param luminance Luminance values
+     * @param width Width of the luminance values
+     * @param scaledWidth Downscaled width
+     * @param scaledHeight Downscaled height
+     * @param scale Size of the blocks
+     * @return Downscaled luminance values
+     */
+    private static byte[] downscale(byte[] luminance, int width, int scaledWidth, int scaledHeight, int scale) {
+        byte[] scaled = new byte[scaledWidth * scaledHeight];
+        int[] sum = new int[scaledWidth];
+        for (int y = 0; y < scaledHeight; y++) {
+            Arrays.fill(sum, 0);
+            for (int j = y * scale; j < (y + 1) * scale; j++) {
+                int offset = j * width;
+                for (int x = 0; x < scaledWidth * scale; x++) {
+                    sum[x / scale] += luminance[offset + x] & 0xff;
                 }
             }
+            for (int x = 0; x < scaledWidth; x++) {
+                scaled[y * scaledWidth + x] = (byte) (sum[x] / (scale * scale));
+            }
         }
-
+        return scaled;
     }
 
-    // calculate all lines through the point (x,y)
-    private void calc(int x, int y) {
-        double d;
-        int dIndex;
-        int index;
-
-        for (int alpha = 0; alpha < (this.cSteps - 1); alpha++) {
-            d = y * this.cCosA[alpha] - x * this.cSinA[alpha];
-            dIndex = (int) (d - this.cDMin);
-            index = dIndex * this.cSteps + alpha;
-            try {
-                this.cHMatrix[index] += 1;
-            } catch (Exception ex) {
-                System.out.println(ex.toString());
+    /**
+     * Find the lower edges: black pixels above a white pixel.
+     *
+     * @param luminance Luminance values
+     * @param width Width
+     * @param height Height
+     * @return Coordinates of the edges (x, y, x, y...)
+     */
+    private static int[] findEdges(byte[] luminance, int width, int height) {
+        int[] edges = new int[1024];
+        int size = 0;
+        for (int y = 0; y < height - 1; y++) {
+            int offset = y * width;
+            for (int x = 1; x < width - 2; x++) {
+                if ((luminance[offset + x] & 0xff) < LUMINANCE_CUTOFF
+                        && (luminance[offset + width + x] & 0xff) >= LUMINANCE_CUTOFF) {
+                    if (size == edges.length) {
+                        edges = Arrays.copyOf(edges, size * 2);
+                    }
+                    edges[size++] = x;
+                    edges[size++] = y;
+                }
             }
         }
+        return Arrays.copyOf(edges, size);
     }
 
-    private void init() {
-
-        double angle;
-
+    /**
+     * Hough transformation of the edges, returns the average angle of the lines with the most points.
+     *
+     * @param edges Coordinates of the edges
+     * @param width Width
+     * @param height Height
+     * @param alphaStart First angle
+     * @param alphaEnd Last angle
+     * @param alphaStep Angle step
+     * @return Average angle, 0 if no line is found
+     */
+    private static double getSkewAngle(int[] edges, int width, int height, double alphaStart, double alphaEnd, double alphaStep) {
         // pre-calculation of sin and cos
-        this.cSinA = new double[this.cSteps - 1];
-        this.cCosA = new double[this.cSteps - 1];
-
-        for (int i = 0; i < (this.cSteps - 1); i++) {
-            angle = getAlpha(i) * Math.PI / 180.0;
-            this.cSinA[i] = Math.sin(angle);
-            this.cCosA[i] = Math.cos(angle);
+        int steps = (int) Math.round((alphaEnd - alphaStart) / alphaStep) + 1;
+        double[] sinA = new double[steps];
+        double[] cosA = new double[steps];
+        for (int i = 0; i < steps; i++) {
+            double angle = (alphaStart + i * alphaStep) * Math.PI / 180.0;
+            sinA[i] = Math.sin(angle);
+            cosA[i] = Math.cos(angle);
         }
 
-        // range of d
-        this.cDMin = -this.cImage.getWidth();
-        this.cDCount = (int) (2.0 * ((this.cImage.getWidth() + this.cImage.getHeight())) / this.cDStep);
-        this.cHMatrix = new int[this.cDCount * this.cSteps];
+        // count of points that fit in each line, the line is represented as all x, y that solve
+        // y * cos(alpha) - x * sin(alpha) = d, with d between -width and width + height
+        int dMin = -width;
+        int dCount = 2 * width + height + 1;
+        int[] hMatrix = new int[dCount * steps];
+        for (int i = 0; i < edges.length; i += 2) {
+            int x = edges[i];
+            int y = edges[i + 1];
+            for (int alpha = 0; alpha < steps; alpha++) {
+                int dIndex = (int) (y * cosA[alpha] - x * sinA[alpha] - dMin);
+                hMatrix[dIndex * steps + alpha]++;
+            }
+        }
 
-    }
+        // top lines of the image, sorted by decreasing count of points
+        int[] topCount = new int[LINE_COUNT];
+        int[] topIndex = new int[LINE_COUNT];
+        for (int i = 0; i < hMatrix.length; i++) {
+            if (hMatrix[i] > topCount[LINE_COUNT - 1]) {
+                int j = LINE_COUNT - 1;
+                while (j > 0 && hMatrix[i] > topCount[j - 1]) {
+                    topCount[j] = topCount[j - 1];
+                    topIndex[j] = topIndex[j - 1];
+                    j--;
+                }
+                topCount[j] = hMatrix[i];
+                topIndex[j] = i;
+            }
+        }
 
-    private double getAlpha(int index) {
-        return this.cAlphaStart + (index * this.cAlphaStep);
+        // average angle of the lines
+        double sum = 0.0;
+        int count = 0;
+        for (int i = 0; i < LINE_COUNT && topCount[i] > 0; i++) {
+            sum += alphaStart + (topIndex[i] % steps) * alphaStep;
+            count++;
+        }
+        return count == 0 ? 0.0d : sum / count;
     }
 }
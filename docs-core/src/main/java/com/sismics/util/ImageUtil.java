@@ -22,13 +22,14 @@ import java.util.Iterator;
  */
 public class ImageUtil {
     /**
-     * Write a high quality JPEG.
-     * 
+     * Write a JPEG.
+     *
      * @param image Image
      * @param outputStream Output stream
+     * @param quality Compression quality, between 0 and 1
      * @throws IOException e
      */
-    public static void writeJpeg(BufferedImage image, OutputStream outputStream) throws IOException {
+    public static void writeJpeg(BufferedImage image, OutputStream outputStream, float quality) throws IOException {
         Iterator<ImageWriter> iter = ImageIO.getImageWritersByFormatName("jpeg");
         ImageWriter writer = null;
         ImageOutputStream imageOutputStream = null;
@@ -36,7 +37,7 @@ public class ImageUtil {
             writer = iter.next();
             ImageWriteParam iwp = writer.getDefaultWriteParam();
             iwp.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
-            iwp.setCompressionQuality(1.f);
+            iwp.setCompressionQuality(quality);
             imageOutputStream = ImageIO.createImageOutputStream(outputStream);
             writer.setOutput(imageOutputStream);
 
@@ -66,6 +67,43 @@ public class ImageUtil {
         }
     }
     
+    /**
+     * Write an uncompressed grayscale PNM (binary PGM).
+     * Transparent pixels are drawn over a white background.
+     *
+     * @param image Image
+     * @param outputStream Output stream
+     * @throws IOException e
+     */
+    public static void writePgm(BufferedImage image, OutputStream outputStream) throws IOException {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        outputStream.write(("P5\n" + width + " " + height + "\n255\n").getBytes(StandardCharsets.US_ASCII));
+
+        byte[] row = new byte[width];
+        if (image.getType() == BufferedImage.TYPE_BYTE_GRAY) {
+            // Gray levels are stored as is
+            WritableRaster raster = image.getRaster();
+            for (int y = 0; y < height; y++) {
+                raster.getDataElements(0, y, width, 1, row);
+                outputStream.write(row);
+            }
+            return;
+        }
+
+        int[] rgbRow = new int[width];
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, rgbRow, 0, width);
+            for (int x = 0; x < width; x++) {
+                int argb = rgbRow[x];
+                int alpha = argb >>> 24;
+                int gray = (((argb >> 16) & 0xff) * 77 + ((argb >> 8) & 0xff) * 150 + (argb & 0xff) * 29) >> 8;
+                row[x] = (byte) ((gray * alpha + 255 * (255 - alpha)) / 255);
+            }
+            outputStream.write(row);
+        }
+    }
+
     /**
      * Compute Gravatar hash.
      * See https://en.gravatar.com/site/implement/hash/.
@@ -83,57 +121,4 @@ public class ImageUtil {
                 email.trim().toLowerCase(), StandardCharsets.UTF_8)
                 .toString();
     }
-
-    /**
-     * Return true if a pixel is black.
-     *
-     * @param image Image
-     * @param x X
-     * @param y Y
-     * @return True if black
-     */
-    public static boolean isBlack(BufferedImage image, int x, int y) {
-        if (image.getType() == BufferedImage.TYPE_BYTE_BINARY) {
-            WritableRaster raster = image.getRaster();
-            int pixelRGBValue = raster.getSample(x, y, 0);
-            return pixelRGBValue == 0;
-        }
-
-        int luminanceValue = 140;
-        return isBlack(image, x, y, luminanceValue);
-    }
-
-    /**
-     * Return true if a pixel is black.
-     *
-     * @param image Image
-     * @param x X
-     * @param y Y
-     * @param luminanceCutOff Luminance cutoff
-     * @return True if black
-     */
-    private static boolean isBlack(BufferedImage image, int x, int y, int luminanceCutOff) {
-        int pixelRGBValue;
-        int r;
-        int g;
-        int b;
-        double luminance = 0.0;
-
-        // return white on areas outside of image boundaries
-        if (x < 0 || y < 0 || x > image.getWidth() || y > image.getHeight()) {
-            return false;
-        }
-
-        try {
-            pixelRGBValue = image.getRGB(x, y);
-            r = (pixelRGBValue >> 16) & 0xff;
-            g = (pixelRGBValue >> 8) & 0xff;
-            b = (pixelRGBValue) & 0xff;
-            luminance = (r * 0.299) + (g * 0.587) + (b * 0.114);
-        } catch (Exception e) {
-            // NOP
-        }
-
-        return luminance < luminanceCutOff;
-    }
 }
@@ -1,9 +1,14 @@
 package com.sismics.util.context;
 
 import com.google.common.collect.Lists;
+import com.sismics.docs.core.event.UserEvent;
 import com.sismics.docs.core.model.context.AppContext;
+import com.sismics.docs.core.util.indexing.IndexingHandler;
 
 import jakarta.persistence.EntityManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.util.Iterator;
 import java.util.List;
 
@@ -13,6 +18,11 @@ import java.util.List;
  * @author jtremeaux
  */
 public class ThreadLocalContext {
+    /**
+     * Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(ThreadLocalContext.class);
+
     /**
      * ThreadLocal to store the context.
      */
@@ -28,6 +38,11 @@ public class ThreadLocalContext {
      */
     private List<Object> asyncEventList = Lists.newArrayList();
 
+    /**
+     * List of actions to run after the current transaction commit.
+     */
+    private List<Runnable> commitActionList = Lists.newArrayList();
+
     /**
      * Private constructor.
      */
@@ -58,15 +73,12 @@ public class ThreadLocalContext {
     
     /**
      * Getter of entityManager.
+     * The entity manager is the unit of work of the request: entities stay managed until the end of the request,
+     * and changes are flushed at commit, or before a query reading the modified tables.
      *
      * @return entityManager
      */
     public EntityManager getEntityManager() {
-        if (entityManager != null && entityManager.isOpen()) {
-            // This disables the L1 cache
-            entityManager.flush();
-            entityManager.clear();
-        }
         return entityManager;
     }
 
@@ -90,8 +102,15 @@ public class ThreadLocalContext {
 
     /**
      * Fire all pending async events.
+     * The cached search results are invalidated first if documents, files or ACLs have changed,
+     * as some searches are resolved by the database without waiting for the index update.
      */
     public void fireAllAsyncEvents() {
+        IndexingHandler indexingHandler = AppContext.getInstance().getIndexingHandler();
+        if (indexingHandler != null && asyncEventList.stream().anyMatch(UserEvent.class::isInstance)) {
+            indexingHandler.invalidateSearchCache();
+        }
+
         Iterator<Object> iterator = asyncEventList.iterator();
         while (iterator.hasNext()) {
             Object asyncEvent = iterator.next();
@@ -99,4 +118,35 @@ public class ThreadLocalContext {
             AppContext.getInstance().getAsyncEventBus().post(asyncEvent);
         }
     }
+
+    /**
+     * Add an action to run after the current transaction commit.
+     * The action is discarded if the transaction is rolled back,
+     * and run immediately outside of a transaction.
+     *
+     * @param action Action
+     */
+    public void addCommitAction(Runnable action) {
+        if (entityManager == null || !entityManager.isOpen() || !entityManager.getTransaction().isActive()) {
+            action.run();
+            return;
+        }
+        commitActionList.add(action);
+    }
+
+    /**
+     * Run all pending commit actions.
+     */
+    public void runCommitActions() {
+        Iterator<Runnable> iterator = commitActionList.iterator();
+        while (iterator.hasNext()) {
+            Runnable action = iterator.next();
+            iterator.remove();
+            try {
+                action.run();
+            } catch (Exception e) {
+                log.error("Error running a commit action", e);
+            }
+        }
+    }
 }
@@ -0,0 +1,131 @@
+package com.sismics.util.jpa;
+
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of the database connection pool.
+ * Registered in the pool configuration, the pool reports each connection acquisition.
+ */
+public class ConnectionPoolMetrics implements MetricsTrackerFactory {
+    /**
+     * Statistics of the last created pool.
+     */
+    private static volatile PoolStats poolStats;
+
+    /**
+     * Number of connections acquired.
+     */
+    private static final LongAdder acquireCount = new LongAdder();
+
+    /**
+     * Total time waited to acquire the connections, in nanoseconds.
+     */
+    private static final LongAdder acquireNanos = new LongAdder();
+
+    /**
+     * Longest time waited to acquire a connection, in nanoseconds.
+     */
+    private static final LongAccumulator acquireMaxNanos = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Number of acquisitions given up after the connection timeout.
+     */
+    private static final LongAdder timeoutCount = new LongAdder();
+
+    @Override
+    public IMetricsTracker create(String poolName, PoolStats poolStats) {
+        ConnectionPoolMetrics.poolStats = poolStats;
+        return new IMetricsTracker() {
+            @Override
+            public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+                acquireCount.increment();
+                acquireNanos.add(elapsedAcquiredNanos);
+                acquireMaxNanos.accumulate(elapsedAcquiredNanos);
+            }
+
+            @Override
+            public void recordConnectionTimeout() {
+                timeoutCount.increment();
+            }
+        };
+    }
+
+    /**
+     * Returns the number of connections in use.
+     *
+     * @return Number of active connections
+     */
+    public static int getActiveCount() {
+        return poolStats == null ? 0 : poolStats.getActiveConnections();
+    }
+
+    /**
+     * Returns the number of connections waiting to be used.
+     *
+     * @return Number of idle connections
+     */
+    public static int getIdleCount() {
+        return poolStats == null ? 0 : poolStats.getIdleConnections();
+    }
+
+    /**
+     * Returns the number of threads waiting for a connection.
+     *
+     * @return Number of waiting threads
+     */
+    public static int getWaitingCount() {
+        return poolStats == null ? 0 : poolStats.getPendingThreads();
+    }
+
+    /**
+     * Returns the maximum number of connections.
+     *
+     * @return Maximum number of connections
+     */
+    public static int getMaxCount() {
+        return poolStats == null ? 0 : poolStats.getMaxConnections();
+    }
+
+    /**
+     * Returns the number of connections acquired.
+     *
+     * @return Number of acquisitions
+     */
+    public static long getAcquireCount() {
+        return acquireCount.sum();
+    }
+
+    /**
+     * Returns the average time waited to acquire a connection.
+     *
+     * @return Average acquisition time in microseconds
+     */
+    public static long getAcquireAverageMicros() {
+        long count = acquireCount.sum();
+        return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(acquireNanos.sum() / count);
+    }
+
+    /**
+     * Returns the longest time waited to acquire a connection.
+     *
+     * @return Maximum acquisition time in microseconds
+     */
+    public static long getAcquireMaxMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(acquireMaxNanos.get());
+    }
+
+    /**
+     * Returns the number of acquisitions given up after the connection timeout.
+     *
+     * @return Number of timeouts
+     */
+    public static long getTimeoutCount() {
+        return timeoutCount.sum();
+    }
+}
@@ -53,7 +53,10 @@ public final class EMF {
             openHelper.open();
             
             emfInstance = Persistence.createEntityManagerFactory("transactions-optional", getEntityManagerProperties());
-            
+
+            // Close the connections used for the database update
+            StandardServiceRegistryBuilder.destroy(reg);
+
         } catch (Throwable t) {
             log.error("Error creating EMF", t);
         }
@@ -83,6 +86,22 @@ public final class EMF {
         if(databasePoolSize == null) {
             databasePoolSize = "10";
         }
+        String databasePoolMinIdle = System.getenv("DATABASE_POOL_MIN_IDLE");
+        if (databasePoolMinIdle == null) {
+            databasePoolMinIdle = "1";
+        }
+        String databasePoolTimeout = System.getenv("DATABASE_POOL_TIMEOUT");
+        if (databasePoolTimeout == null) {
+            databasePoolTimeout = "30000";
+        }
+        String databaseLeakDetectionThreshold = System.getenv("DATABASE_LEAK_DETECTION_THRESHOLD");
+        if (databaseLeakDetectionThreshold == null) {
+            databaseLeakDetectionThreshold = "0";
+        }
+        String databasePrepareThreshold = System.getenv("DATABASE_PREPARE_THRESHOLD");
+        if (databasePrepareThreshold == null) {
+            databasePrepareThreshold = "5";
+        }
 
         log.info("Configuring EntityManager from environment parameters");
         Properties props = new Properties();
@@ -100,15 +119,24 @@ public final class EMF {
             props.put("hibernate.connection.url", databaseUrl);
             props.put("hibernate.connection.username", databaseUsername);
             props.put("hibernate.connection.password", databasePassword);
+
+            // Statements prepared on the server are cached by each pooled connection, 0 to disable behind a transaction pooler
+            props.put("hibernate.hikari.dataSource.prepareThreshold", databasePrepareThreshold);
+            props.put("hibernate.hikari.dataSource.preparedStatementCacheQueries", "512");
+            props.put("hibernate.hikari.dataSource.preparedStatementCacheSizeMiB", "10");
         }
         props.put("hibernate.hbm2ddl.auto", "");
         props.put("hibernate.show_sql", "false");
         props.put("hibernate.format_sql", "false");
         props.put("hibernate.max_fetch_depth", "5");
         props.put("hibernate.cache.use_second_level_cache", "false");
-        props.put("hibernate.connection.initial_pool_size", "1");
-        props.put("hibernate.connection.pool_size", databasePoolSize);
-        props.put("hibernate.connection.pool_validation_interval", "5");
+        props.put("hibernate.connection.provider_class", "org.hibernate.hikaricp.internal.HikariCPConnectionProvider");
+        props.put("hibernate.hikari.poolName", "docs");
+        props.put("hibernate.hikari.maximumPoolSize", databasePoolSize);
+        props.put("hibernate.hikari.minimumIdle", databasePoolMinIdle);
+        props.put("hibernate.hikari.connectionTimeout", databasePoolTimeout);
+        props.put("hibernate.hikari.leakDetectionThreshold", databaseLeakDetectionThreshold);
+        props.put("hibernate.hikari.metricsTrackerFactory", ConnectionPoolMetrics.class.getName());
         return props;
     }
     
@@ -0,0 +1,8 @@
+-- DBUPDATE-032-0.SQL
+
+-- Create the file processing jobs table
+create cached table T_FILE_JOB ( FJB_ID_C varchar(36) not null, FJB_IDFILE_C varchar(36) not null, FJB_IDUSER_C varchar(36) not null, FJB_LANGUAGE_C varchar(7), FJB_FILECREATED_B bit not null, FJB_LANE_C varchar(20) not null, FJB_STATE_C varchar(20) not null, FJB_ATTEMPT_N int not null, FJB_LEASEOWNER_C varchar(36), FJB_LEASEEXPIREDATE_D datetime, FJB_CREATEDATE_D datetime not null, primary key (FJB_ID_C) );
+create index IDX_FJB_STATE_C on T_FILE_JOB (FJB_STATE_C);
+
+-- Update the database version
+update T_CONFIG set CFG_VALUE_C = '32' where CFG_ID_C = 'DB_VERSION';
@@ -0,0 +1,139 @@
+package com.sismics.docs.core.dao;
+
+import com.sismics.docs.BaseTransactionalTest;
+import com.sismics.docs.core.constant.FileJobState;
+import com.sismics.docs.core.constant.FileProcessingLane;
+import com.sismics.docs.core.model.jpa.FileJob;
+import com.sismics.util.context.ThreadLocalContext;
+import jakarta.persistence.EntityManager;
+import org.joda.time.DateTime;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Test of the file processing job DAO.
+ */
+public class TestFileJobDao extends BaseTransactionalTest {
+    @Test
+    public void testLease() {
+        FileJobDao fileJobDao = new FileJobDao();
+        String jobId = createJob();
+        FileJob fileJob = getJob(jobId);
+        Assert.assertEquals(FileJobState.PENDING, fileJob.getState());
+        Assert.assertEquals(0, fileJob.getAttempt());
+
+        // A pending job is taken by a single node, each lease counts an attempt
+        Assert.assertTrue(fileJobDao.lease(jobId, "node1", inMinutes(5)));
+        Assert.assertFalse(fileJobDao.lease(jobId, "node2", inMinutes(5)));
+        fileJob = getJob(jobId);
+        Assert.assertEquals(FileJobState.RUNNING, fileJob.getState());
+        Assert.assertEquals("node1", fileJob.getLeaseOwner());
+        Assert.assertEquals(1, fileJob.getAttempt());
+
+        // The lease is extended by its owner only
+        fileJobDao.renewLeases("node2", Collections.singletonList(jobId), inMinutes(-1));
+        Assert.assertFalse(fileJobDao.lease(jobId, "node2", inMinutes(5)));
+
+        // An expired lease is taken by another node
+        fileJobDao.renewLeases("node1", Collections.singletonList(jobId), inMinutes(-1));
+        Assert.assertTrue(fileJobDao.lease(jobId, "node2", inMinutes(5)));
+        fileJob = getJob(jobId);
+        Assert.assertEquals("node2", fileJob.getLeaseOwner());
+        Assert.assertEquals(2, fileJob.getAttempt());
+
+        // A job given back is pending again, without counting the attempt
+        fileJobDao.release(jobId, "node1");
+        Assert.assertEquals("node2", getJob(jobId).getLeaseOwner());
+        fileJobDao.release(jobId, "node2");
+        fileJob = getJob(jobId);
+        Assert.assertEquals(FileJobState.PENDING, fileJob.getState());
+        Assert.assertNull(fileJob.getLeaseOwner());
+        Assert.assertNull(fileJob.getLeaseExpireDate());
+        Assert.assertEquals(1, fileJob.getAttempt());
+    }
+
+    @Test
+    public void testEnd() {
+        FileJobDao fileJobDao = new FileJobDao();
+
+        // A failed job is not taken anymore
+        String failedJobId = createJob();
+        Assert.assertTrue(fileJobDao.lease(failedJobId, "node1", inMinutes(5)));
+        fileJobDao.fail(failedJobId);
+        FileJob fileJob = getJob(failedJobId);
+        Assert.assertEquals(FileJobState.FAILED, fileJob.getState());
+        Assert.assertNull(fileJob.getLeaseOwner());
+        Assert.assertFalse(fileJobDao.lease(failedJobId, "node1", inMinutes(5)));
+
+        // A successful job is deleted
+        String successJobId = createJob();
+        Assert.assertTrue(fileJobDao.lease(successJobId, "node1", inMinutes(5)));
+        fileJobDao.delete(successJobId);
+        Assert.assertNull(getJob(successJobId));
+        Assert.assertFalse(fileJobDao.lease(successJobId, "node1", inMinutes(5)));
+    }
+
+    @Test
+    public void testFindResumable() {
+        FileJobDao fileJobDao = new FileJobDao();
+        String pendingJobId = createJob();
+        String runningJobId = createJob();
+        Assert.assertTrue(fileJobDao.lease(runningJobId, "node1", inMinutes(5)));
+        String expiredJobId = createJob();
+        Assert.assertTrue(fileJobDao.lease(expiredJobId, "node1", inMinutes(-1)));
+        String failedJobId = createJob();
+        fileJobDao.fail(failedJobId);
+
+        // Pending jobs and expired leases are resumed
+        List<String> jobIdList = findResumable(inMinutes(1));
+        Assert.assertTrue(jobIdList.contains(pendingJobId));
+        Assert.assertTrue(jobIdList.contains(expiredJobId));
+        Assert.assertFalse(jobIdList.contains(runningJobId));
+        Assert.assertFalse(jobIdList.contains(failedJobId));
+
+        // Recent pending jobs are left to their event
+        jobIdList = findResumable(inMinutes(-1));
+        Assert.assertFalse(jobIdList.contains(pendingJobId));
+        Assert.assertTrue(jobIdList.contains(expiredJobId));
+    }
+
+    private static String createJob() {
+        return new FileJobDao().create(new FileJob()
+                .setFileId(UUID.randomUUID().toString())
+                .setUserId("admin")
+                .setLanguage("eng")
+                .setFileCreated(true)
+                .setLane(FileProcessingLane.INTERACTIVE));
+    }
+
+    /**
+     * Returns a job as stored in database, the updates being done in bulk.
+     */
+    private static FileJob getJob(String jobId) {
+        clear();
+        return new FileJobDao().getById(jobId);
+    }
+
+    private static List<String> findResumable(Date createDateMax) {
+        clear();
+        return new FileJobDao().findResumable(createDateMax, 100).stream()
+                .map(FileJob::getId)
+                .collect(Collectors.toList());
+    }
+
+    private static void clear() {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        em.flush();
+        em.clear();
+    }
+
+    private static Date inMinutes(int minutes) {
+        return new DateTime().plusMinutes(minutes).toDate();
+    }
+}
@@ -0,0 +1,88 @@
+package com.sismics.docs.core.util;
+
+import com.sismics.docs.BaseTransactionalTest;
+import com.sismics.docs.core.constant.ConfigType;
+import com.sismics.docs.core.dao.ConfigDao;
+import com.sismics.util.context.ThreadLocalContext;
+import com.sismics.util.jpa.EMF;
+import jakarta.persistence.EntityManager;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test of the configuration parameter utilities.
+ */
+public class TestConfigUtil extends BaseTransactionalTest {
+    @Test
+    public void testConfigUtil() {
+        // Read from the snapshot
+        Assert.assertEquals("eng", ConfigUtil.getConfigStringValue(ConfigType.DEFAULT_LANGUAGE));
+        Assert.assertEquals(993, ConfigUtil.getConfigIntegerValue(ConfigType.INBOX_PORT));
+        Assert.assertFalse(ConfigUtil.getConfigBooleanValue(ConfigType.INBOX_ENABLED));
+
+        // Undefined parameter
+        Assert.assertEquals("default", ConfigUtil.getConfigStringValue(ConfigType.THEME, "default"));
+        Assert.assertTrue(ConfigUtil.getConfigBooleanValue(ConfigType.OCR_ENABLED, true));
+
+        // Updates are visible once committed
+        ConfigDao configDao = new ConfigDao();
+        configDao.update(ConfigType.DEFAULT_LANGUAGE, "fra");
+        Assert.assertEquals("eng", ConfigUtil.getConfigStringValue(ConfigType.DEFAULT_LANGUAGE));
+        TransactionUtil.commit();
+        Assert.assertEquals("fra", ConfigUtil.getConfigStringValue(ConfigType.DEFAULT_LANGUAGE));
+        configDao.update(ConfigType.DEFAULT_LANGUAGE, "eng");
+        TransactionUtil.commit();
+        Assert.assertEquals("eng", ConfigUtil.getConfigStringValue(ConfigType.DEFAULT_LANGUAGE));
+
+        // Rolled back updates are never visible
+        configDao.update(ConfigType.THEME, "{}");
+        Assert.assertEquals("default", ConfigUtil.getConfigStringValue(ConfigType.THEME, "default"));
+        ThreadLocalContext.get().getEntityManager().getTransaction().rollback();
+        ThreadLocalContext.cleanup();
+        setUp();
+        Assert.assertEquals("default", ConfigUtil.getConfigStringValue(ConfigType.THEME, "default"));
+    }
+
+    @Test
+    public void testReloadInTransaction() throws Exception {
+        Assert.assertEquals("eng", ConfigUtil.getConfigStringValue(ConfigType.DEFAULT_LANGUAGE));
+
+        // Another node commits a change while a transaction is open here
+        new ConfigDao().update(ConfigType.THEME, "{}");
+        updateCommitted(ConfigType.DEFAULT_LANGUAGE, "fra");
+
+        // The outdated snapshot is served while it is reloaded in background, without the uncommitted change
+        ConfigUtil.expire();
+        Assert.assertEquals("eng", ConfigUtil.getConfigStringValue(ConfigType.DEFAULT_LANGUAGE));
+        long timeout = System.currentTimeMillis() + 10000;
+        while (!"fra".equals(ConfigUtil.getConfigStringValue(ConfigType.DEFAULT_LANGUAGE)) && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals("fra", ConfigUtil.getConfigStringValue(ConfigType.DEFAULT_LANGUAGE));
+        Assert.assertEquals("default", ConfigUtil.getConfigStringValue(ConfigType.THEME, "default"));
+
+        // Restore the committed value
+        updateCommitted(ConfigType.DEFAULT_LANGUAGE, "eng");
+        ConfigUtil.update(ConfigType.DEFAULT_LANGUAGE, "eng");
+    }
+
+    /**
+     * Update a configuration parameter in a separate transaction.
+     *
+     * @param configType Type of the configuration parameter
+     * @param value Value
+     */
+    private static void updateCommitted(ConfigType configType, String value) {
+        EntityManager em = EMF.get().createEntityManager();
+        try {
+            em.getTransaction().begin();
+            em.createNativeQuery("update T_CONFIG set CFG_VALUE_C = :value where CFG_ID_C = :id")
+                    .setParameter("value", value)
+                    .setParameter("id", configType.name())
+                    .executeUpdate();
+            em.getTransaction().commit();
+        } finally {
+            em.close();
+        }
+    }
+}
@@ -8,7 +8,9 @@ import org.junit.Test;
 
 import javax.crypto.Cipher;
 import javax.crypto.CipherInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.InputStream;
+import java.util.Arrays;
 
 /**
  * Test of the encryption utilities.
@@ -48,4 +50,29 @@ public class TestEncryptUtil extends BaseTest {
         
         Assert.assertEquals(encryptedData.length, assertData.length);
     }
+
+    @Test
+    public void encryptDecryptStreamTest() throws Exception {
+        // The second cipher uses the cached secret key, it must produce the same data
+        byte[] encryptedData = ByteStreams.toByteArray(new CipherInputStream(getSystemResourceAsStream(FILE_PDF),
+                EncryptionUtil.getEncryptionCipher("OnceUponATime")));
+        byte[] encryptedData2 = ByteStreams.toByteArray(new CipherInputStream(getSystemResourceAsStream(FILE_PDF),
+                EncryptionUtil.getEncryptionCipher("OnceUponATime")));
+        Assert.assertArrayEquals(encryptedData, encryptedData2);
+
+        byte[] decryptedData = ByteStreams.toByteArray(EncryptionUtil.decryptInputStream(
+                new ByteArrayInputStream(encryptedData), "OnceUponATime"));
+        Assert.assertArrayEquals(ByteStreams.toByteArray(getSystemResourceAsStream(FILE_PDF)), decryptedData);
+    }
+
+    @Test
+    public void decryptStreamOffsetTest() throws Exception {
+        byte[] decryptedData = ByteStreams.toByteArray(EncryptionUtil.decryptInputStream(
+                getSystemResourceAsStream(FILE_PDF_ENCRYPTED), "OnceUponATime"));
+        for (long offset : new long[] { 0, 1, 15, 16, 17, 1000, decryptedData.length - 1, decryptedData.length }) {
+            byte[] offsetData = ByteStreams.toByteArray(EncryptionUtil.decryptInputStream(
+                    getSystemResourceAsStream(FILE_PDF_ENCRYPTED), "OnceUponATime", offset));
+            Assert.assertArrayEquals(Arrays.copyOfRange(decryptedData, (int) offset, decryptedData.length), offsetData);
+        }
+    }
 }
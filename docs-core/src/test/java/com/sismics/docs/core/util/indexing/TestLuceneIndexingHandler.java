@@ -0,0 +1,124 @@
+package com.sismics.docs.core.util.indexing;
+
+import com.google.common.eventbus.Subscribe;
+import com.sismics.docs.BaseTransactionalTest;
+import com.sismics.docs.core.constant.ConfigType;
+import com.sismics.docs.core.dao.ConfigDao;
+import com.sismics.docs.core.event.RebuildIndexAsyncEvent;
+import com.sismics.docs.core.model.context.AppContext;
+import com.sismics.docs.core.model.jpa.Document;
+import com.sismics.docs.core.util.DirectoryUtil;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Test of the Lucene indexing handler.
+ */
+public class TestLuceneIndexingHandler extends BaseTransactionalTest {
+    @Test
+    public void testRestartMmap() throws Exception {
+        AtomicInteger rebuildCount = countRebuilds();
+
+        // Start on an empty memory mapped index
+        Path luceneDirectory = DirectoryUtil.getLuceneDirectory();
+        deleteDirectory(luceneDirectory);
+        new ConfigDao().update(ConfigType.LUCENE_DIRECTORY_STORAGE, "MMAP");
+        createIndex();
+
+        // Restart on the existing index, it is checked without being rebuilt
+        rebuildCount.set(0);
+        LuceneIndexingHandler handler = new LuceneIndexingHandler();
+        handler.startUp();
+        handler.shutDown();
+        Assert.assertEquals(0, rebuildCount.get());
+        Assert.assertEquals(1, countDocuments(luceneDirectory));
+        deleteDirectory(luceneDirectory);
+    }
+
+    @Test
+    public void testRecoverSwap() throws Exception {
+        AtomicInteger rebuildCount = countRebuilds();
+
+        // Crash between the two moves of a swap: the rebuilt index is not in place yet
+        Path luceneDirectory = DirectoryUtil.getLuceneDirectory();
+        Path rebuildDirectory = DirectoryUtil.getLuceneRebuildDirectory();
+        Path oldDirectory = luceneDirectory.resolveSibling(luceneDirectory.getFileName() + "_old");
+        deleteDirectory(luceneDirectory);
+        deleteDirectory(rebuildDirectory);
+        deleteDirectory(oldDirectory);
+        new ConfigDao().update(ConfigType.LUCENE_DIRECTORY_STORAGE, "FILE");
+        createIndex();
+        Files.move(luceneDirectory, rebuildDirectory, StandardCopyOption.REPLACE_EXISTING);
+        Files.createDirectories(oldDirectory);
+
+        // The swap is completed on startup instead of rebuilding the index
+        rebuildCount.set(0);
+        LuceneIndexingHandler handler = new LuceneIndexingHandler();
+        handler.startUp();
+        handler.shutDown();
+        Assert.assertEquals(0, rebuildCount.get());
+        Assert.assertEquals(1, countDocuments(luceneDirectory));
+        Assert.assertFalse(Files.exists(oldDirectory));
+        deleteDirectory(luceneDirectory);
+        deleteDirectory(rebuildDirectory);
+    }
+
+    /**
+     * Count the full rebuilds requested, the application indexing handler keeps its RAM storage.
+     */
+    private static AtomicInteger countRebuilds() {
+        AtomicInteger rebuildCount = new AtomicInteger();
+        AppContext.getInstance().getAsyncEventBus().register(new Object() {
+            @Subscribe
+            public void onRebuildIndex(RebuildIndexAsyncEvent event) {
+                rebuildCount.incrementAndGet();
+            }
+        });
+        return rebuildCount;
+    }
+
+    /**
+     * Create an index with a single document in the configured storage.
+     */
+    private static void createIndex() throws Exception {
+        LuceneIndexingHandler handler = new LuceneIndexingHandler();
+        handler.startUp();
+        Document document = new Document();
+        document.setId(UUID.randomUUID().toString());
+        document.setUserId("admin");
+        document.setTitle("Restart test");
+        document.setLanguage("eng");
+        document.setCreateDate(new Date());
+        handler.createDocument(document);
+        handler.shutDown();
+    }
+
+    private static int countDocuments(Path path) throws IOException {
+        try (Directory directory = FSDirectory.open(path);
+             DirectoryReader reader = DirectoryReader.open(directory)) {
+            return reader.numDocs();
+        }
+    }
+
+    private static void deleteDirectory(Path path) throws IOException {
+        if (Files.exists(path)) {
+            try (Stream<Path> stream = Files.walk(path)) {
+                stream.sorted(Comparator.reverseOrder())
+                        .forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.sismics.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+/**
+ * Test of the skew angle detection.
+ */
+public class TestImageDeskew {
+    @Test
+    public void getSkewAngleTest() {
+        for (double angle : new double[] { 0, 1.5, -3.2, 12.4 }) {
+            Assert.assertEquals(angle, new ImageDeskew(createPage(angle, BufferedImage.TYPE_INT_RGB, Color.BLACK)).getSkewAngle(), 0.1);
+        }
+
+        // Gray page
+        Assert.assertEquals(-3.2, new ImageDeskew(createPage(-3.2, BufferedImage.TYPE_BYTE_GRAY, Color.BLACK)).getSkewAngle(), 0.1);
+
+        // Gray samples are linear, the words of a gray page stored as 100 are seen as 168 by getRGB and are not dark
+        Assert.assertEquals(0, new ImageDeskew(createPage(-3.2, BufferedImage.TYPE_BYTE_GRAY, new Color(100, 100, 100))).getSkewAngle(), 0);
+
+        // Blank page
+        BufferedImage blankImage = new BufferedImage(1000, 1400, BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D graphics = blankImage.createGraphics();
+        graphics.setColor(Color.WHITE);
+        graphics.fillRect(0, 0, blankImage.getWidth(), blankImage.getHeight());
+        graphics.dispose();
+        Assert.assertEquals(0, new ImageDeskew(blankImage).getSkewAngle(), 0);
+    }
+
+    /**
+     * Create a page with lines of words, rotated.
+     *
+     * @param angle Rotation angle
+     * @param imageType Image type
+     * @param color Color of the words
+     * @return Page image
+     */
+    private BufferedImage createPage(double angle, int imageType, Color color) {
+        BufferedImage image = new BufferedImage(2500, 3500, imageType);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(Color.WHITE);
+        graphics.fillRect(0, 0, image.getWidth(), image.getHeight());
+        graphics.rotate(Math.toRadians(angle), image.getWidth() / 2.0, image.getHeight() / 2.0);
+        graphics.setColor(color);
+        for (int y = 300; y < 3200; y += 60) {
+            for (int x = 250, i = 0; x < 2200; i++) {
+                int width = 30 + (i * 37 + y) % 110;
+                graphics.fillRect(x, y, width, 25);
+                x += width + 20;
+            }
+        }
+        graphics.dispose();
+        return image;
+    }
+}
@@ -3,6 +3,11 @@ package com.sismics.util;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
 /**
  * Test of the image utilities.
  * 
@@ -14,4 +19,25 @@ public class TestImageUtil {
     public void computeGravatarTest() {
         Assert.assertEquals("0bc83cb571cd1c50ba6f3e8a78ef1346", ImageUtil.computeGravatar("MyEmailAddress@example.com "));
     }
+
+    @Test
+    public void writePgmTest() throws Exception {
+        // Grayscale image
+        BufferedImage grayImage = new BufferedImage(2, 2, BufferedImage.TYPE_BYTE_GRAY);
+        grayImage.getRaster().setSample(1, 0, 0, 200);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        ImageUtil.writePgm(grayImage, outputStream);
+        byte[] header = "P5\n2 2\n255\n".getBytes(StandardCharsets.US_ASCII);
+        byte[] data = outputStream.toByteArray();
+        Assert.assertArrayEquals(header, Arrays.copyOf(data, header.length));
+        Assert.assertArrayEquals(new byte[] { 0, (byte) 200, 0, 0 }, Arrays.copyOfRange(data, header.length, data.length));
+
+        // Color image with transparency
+        BufferedImage argbImage = new BufferedImage(2, 1, BufferedImage.TYPE_INT_ARGB);
+        argbImage.setRGB(0, 0, 0xff000000);
+        outputStream = new ByteArrayOutputStream();
+        ImageUtil.writePgm(argbImage, outputStream);
+        data = outputStream.toByteArray();
+        Assert.assertArrayEquals(new byte[] { 0, (byte) 255 }, Arrays.copyOfRange(data, data.length - 2, data.length));
+    }
 }
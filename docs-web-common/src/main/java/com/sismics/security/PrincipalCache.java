@@ -0,0 +1,117 @@
+package com.sismics.security;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.sismics.util.context.ThreadLocalContext;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of the authenticated users principals, by authentication token.
+ * Resolving a principal needs the token, the user, its groups and its base functions,
+ * the entries are kept for a short time and invalidated when one of them changes.
+ * Invalidations are done immediately, and again after the current transaction commit,
+ * so that a principal loaded by a concurrent request before the commit doesn't stay cached.
+ * Each invalidation increments a generation, a principal loaded during an invalidation is not cached.
+ */
+public class PrincipalCache {
+    /**
+     * Time to live of an entry in seconds.
+     */
+    private static final int TTL = 60;
+
+    /**
+     * Maximum number of entries.
+     */
+    private static final int MAXIMUM_SIZE = 10000;
+
+    /**
+     * Principals by authentication token.
+     */
+    private static final Cache<String, UserPrincipal> cache = CacheBuilder.newBuilder()
+            .expireAfterWrite(TTL, TimeUnit.SECONDS)
+            .maximumSize(MAXIMUM_SIZE)
+            .build();
+
+    /**
+     * Invalidation generation, incremented before each invalidation.
+     */
+    private static final AtomicLong generation = new AtomicLong();
+
+    /**
+     * Returns the current invalidation generation, to be read before loading a principal.
+     *
+     * @return Invalidation generation
+     */
+    public static long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Returns the cached principal of an authentication token.
+     *
+     * @param token Authentication token
+     * @return Principal or null
+     */
+    public static UserPrincipal get(String token) {
+        return cache.getIfPresent(token);
+    }
+
+    /**
+     * Cache the principal of an authentication token, unless an invalidation happened since it started loading.
+     *
+     * @param token Authentication token
+     * @param principal Principal
+     * @param loadGeneration Invalidation generation read before loading the principal
+     */
+    public static void put(String token, UserPrincipal principal, long loadGeneration) {
+        if (generation.get() != loadGeneration) {
+            return;
+        }
+        cache.put(token, principal);
+        if (generation.get() != loadGeneration) {
+            // Invalidated while being added
+            cache.invalidate(token);
+        }
+    }
+
+    /**
+     * Remove an authentication token from the cache.
+     *
+     * @param token Authentication token
+     */
+    public static void invalidateToken(String token) {
+        invalidate(() -> cache.invalidate(token));
+    }
+
+    /**
+     * Remove all the authentication tokens of a user from the cache.
+     *
+     * @param userId User ID
+     */
+    public static void invalidateUser(String userId) {
+        invalidate(() -> cache.asMap().values().removeIf(principal -> principal.getId().equals(userId)));
+    }
+
+    /**
+     * Remove all entries, when the groups hierarchy changes.
+     */
+    public static void invalidateAll() {
+        invalidate(cache::invalidateAll);
+    }
+
+    /**
+     * Run an invalidation now and after the current transaction commit.
+     *
+     * @param invalidation Invalidation
+     */
+    private static void invalidate(Runnable invalidation) {
+        Runnable generationInvalidation = () -> {
+            generation.incrementAndGet();
+            invalidation.run();
+        };
+        generationInvalidation.run();
+        ThreadLocalContext.get().addCommitAction(generationInvalidation);
+    }
+}
@@ -0,0 +1,53 @@
+package com.sismics.util.filter;
+
+import com.sismics.util.context.ThreadLocalContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jakarta.json.Json;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceException;
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ContainerResponseContext;
+import jakarta.ws.rs.container.ContainerResponseFilter;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.ext.Provider;
+
+/**
+ * Flush the changes of the request before a successful response is written.
+ * The transaction is committed after the response, a database error found there
+ * could not be reported to the client anymore.
+ */
+@Provider
+public class FlushResponseFilter implements ContainerResponseFilter {
+    /**
+     * Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(FlushResponseFilter.class);
+
+    @Override
+    public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext) {
+        Response.Status.Family family = responseContext.getStatusInfo().getFamily();
+        if (family != Response.Status.Family.SUCCESSFUL && family != Response.Status.Family.REDIRECTION) {
+            return;
+        }
+
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        if (em == null || !em.isOpen() || !em.getTransaction().isActive()) {
+            return;
+        }
+
+        try {
+            em.flush();
+        } catch (PersistenceException e) {
+            log.error("Error flushing the request changes", e);
+            em.getTransaction().setRollbackOnly();
+            responseContext.setStatus(Response.Status.INTERNAL_SERVER_ERROR.getStatusCode());
+            responseContext.setEntity(Json.createObjectBuilder()
+                    .add("type", "DatabaseError")
+                    .add("message", "Error saving the changes")
+                    .build(), responseContext.getEntityAnnotations(), MediaType.APPLICATION_JSON_TYPE);
+        }
+    }
+}
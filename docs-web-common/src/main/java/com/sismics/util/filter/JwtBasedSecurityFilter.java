@@ -7,16 +7,24 @@ import com.auth0.jwt.interfaces.DecodedJWT;
 import com.auth0.jwt.interfaces.JWTVerifier;
 
 import java.io.IOException;
-import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Base64;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import com.sismics.docs.core.constant.Constants;
 import com.sismics.docs.core.dao.UserDao;
 import com.sismics.docs.core.model.jpa.User;
 import jakarta.json.Json;
-import jakarta.json.JsonArray;
 import jakarta.json.JsonObject;
 import jakarta.json.JsonReader;
+import jakarta.json.JsonValue;
 import jakarta.servlet.FilterConfig;
 import jakarta.servlet.http.HttpServletRequest;
 import okhttp3.Request;
@@ -25,18 +33,25 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.ByteArrayInputStream;
+import java.security.PublicKey;
 import java.security.cert.CertificateException;
 import java.security.cert.CertificateFactory;
 import java.security.interfaces.RSAPublicKey;
-import java.util.Objects;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import static java.util.Optional.ofNullable;
 
 /**
  * This filter is used to authenticate the user having an active session by validating a jwt token.
  * The filter extracts the jwt token stored from Authorization header.
- * It validates the token by calling an Identity Broker like KeyCloak.
+ * It validates the token with the public keys of an Identity Broker like KeyCloak.
+ * The public keys are cached and refreshed in the background, and valid tokens are remembered until they expire.
+ * Only the issuers publishing at least one public key are cached, and the trusted issuer can be restricted with DOCS_JWT_ISSUER.
  * If validated, the user is retrieved, and the filter injects a UserPrincipal into the request attribute.
  *
  * @author smitra
@@ -48,15 +63,81 @@ public class JwtBasedSecurityFilter extends SecurityFilter {
      * Name of the header used to store the authentication token.
      */
     public static final String HEADER_NAME = "Authorization";
+
+    /**
+     * Delay in minutes after which the public keys of an issuer are refreshed in the background.
+     */
+    private static final int JWKS_REFRESH_DELAY = 5;
+
+    /**
+     * Delay in minutes after which the public keys of an issuer are not used anymore, if they could not be refreshed.
+     */
+    private static final int JWKS_EXPIRE_DELAY = 60;
+
+    /**
+     * Minimum delay in seconds between two fetches of the public keys of an issuer, when a key ID is unknown.
+     */
+    private static final int JWKS_FETCH_INTERVAL = 30;
+
+    /**
+     * Maximum number of issuers cached.
+     */
+    private static final int ISSUER_CACHE_SIZE = 100;
+
+    /**
+     * Maximum number of valid tokens cached.
+     */
+    private static final int TOKEN_CACHE_SIZE = 10000;
+
+    /**
+     * Public keys by key ID, by URL of the issuer certificates.
+     * Entries are only added by getPublicKey, and never empty.
+     */
+    private static final LoadingCache<String, Map<String, RSAPublicKey>> jwksCache = CacheBuilder.newBuilder()
+            .maximumSize(ISSUER_CACHE_SIZE)
+            .refreshAfterWrite(JWKS_REFRESH_DELAY, TimeUnit.MINUTES)
+            .expireAfterWrite(JWKS_EXPIRE_DELAY, TimeUnit.MINUTES)
+            .build(CacheLoader.asyncReloading(CacheLoader.from(JwtBasedSecurityFilter::fetchPublicKeys),
+                    Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+                            .setNameFormat("jwks-refresh")
+                            .setDaemon(true)
+                            .build())));
+
+    /**
+     * URL of the issuer certificates fetched recently because of an unknown key ID, or which could not be fetched.
+     */
+    private static final Cache<String, Boolean> jwksFetchCache = CacheBuilder.newBuilder()
+            .maximumSize(ISSUER_CACHE_SIZE)
+            .expireAfterWrite(JWKS_FETCH_INTERVAL, TimeUnit.SECONDS)
+            .build();
+
+    /**
+     * Expiration date of the valid tokens, by SHA-256 hash of the token.
+     * A token is not trusted longer than the public key which signed it.
+     */
+    private static final Cache<String, Date> verifiedTokenCache = CacheBuilder.newBuilder()
+            .maximumSize(TOKEN_CACHE_SIZE)
+            .expireAfterWrite(JWKS_EXPIRE_DELAY, TimeUnit.MINUTES)
+            .build();
+
     /**
      * True if this authentication method is enabled.
      */
     private boolean enabled;
 
+    /**
+     * Only trusted issuer, or null to trust all issuers.
+     */
+    private String trustedIssuer;
+
     @Override
     public void init(FilterConfig filterConfig) {
         enabled = Boolean.parseBoolean(filterConfig.getInitParameter("enabled"))
                 || Boolean.parseBoolean(System.getProperty("docs.jwt_authentication"));
+        trustedIssuer = System.getenv(Constants.JWT_ISSUER_ENV);
+        if (enabled && trustedIssuer == null) {
+            log.warn(Constants.JWT_ISSUER_ENV + " is not set, tokens from all issuers are accepted.");
+        }
     }
 
     @Override
@@ -64,7 +145,7 @@ public class JwtBasedSecurityFilter extends SecurityFilter {
         if (!enabled) {
             return null;
         }
-        log.info("Jwt authentication started");
+        log.debug("Jwt authentication started");
         User user = null;
         String token = extractAuthToken(request).replace("Bearer ", "");
         DecodedJWT jwt = JWT.decode(token);
@@ -93,19 +174,27 @@ public class JwtBasedSecurityFilter extends SecurityFilter {
     }
 
     private boolean verifyJwt(final DecodedJWT jwt, final String token) {
+        // Tokens already verified are valid until they expire
+        String tokenHash = Hashing.sha256().hashString(token, StandardCharsets.UTF_8).toString();
+        Date expiresAt = verifiedTokenCache.getIfPresent(tokenHash);
+        if (expiresAt != null) {
+            if (expiresAt.after(new Date())) {
+                return Boolean.TRUE;
+            }
+            verifiedTokenCache.invalidate(tokenHash);
+        }
 
         try {
             buildJWTVerifier(jwt).verify(token);
             // if token is valid no exception will be thrown
-            log.info("Valid TOKEN");
+            log.debug("Valid TOKEN");
+            if (jwt.getExpiresAt() != null) {
+                verifiedTokenCache.put(tokenHash, jwt.getExpiresAt());
+            }
             return Boolean.TRUE;
-        } catch (CertificateException e) {
-            //if CertificateException comes from buildJWTVerifier()
-            log.info("InValid TOKEN: " + e.getMessage());
-            return Boolean.FALSE;
         } catch (JWTVerificationException e) {
             // if JWT Token in invalid
-            log.info("InValid TOKEN: " + e.getMessage() );
+            log.debug("InValid TOKEN: " + e.getMessage() );
             return Boolean.FALSE;
         } catch (Exception e) {
             // If any other exception comes
@@ -118,43 +207,95 @@ public class JwtBasedSecurityFilter extends SecurityFilter {
         return ofNullable(request.getHeader("Authorization")).orElse("");
     }
 
-    private RSAPublicKey getPublicKey(DecodedJWT jwt) {
-        String jwtIssuerCerts = jwt.getIssuer() + "/protocol/openid-connect/certs";
-        String publicKey = "";
-        RSAPublicKey rsaPublicKey = null;
+    /**
+     * Returns the public key which signed a token, from the cache if possible.
+     * An unknown issuer is fetched and cached only if it publishes public keys, concurrent requests wait for the same fetch.
+     * An unknown key ID of a cached issuer, or an issuer which could not be fetched, causes a new fetch of its certificates
+     * at most every JWKS_FETCH_INTERVAL seconds.
+     *
+     * @param jwt Decoded token
+     * @return Public key or null if not found
+     */
+    RSAPublicKey getPublicKey(DecodedJWT jwt) {
+        String issuer = jwt.getIssuer();
+        if (issuer == null || trustedIssuer != null && !trustedIssuer.equals(issuer)) {
+            log.debug("Untrusted jwt issuer: " + issuer);
+            return null;
+        }
+
+        String jwtIssuerCerts = issuer + "/protocol/openid-connect/certs";
+        try {
+            Map<String, RSAPublicKey> publicKeyMap = jwksCache.getIfPresent(jwtIssuerCerts);
+            if (publicKeyMap == null) {
+                if (jwksFetchCache.getIfPresent(jwtIssuerCerts) != null) {
+                    log.debug("Jwt issuer recently failed: " + jwtIssuerCerts);
+                    return null;
+                }
+                publicKeyMap = jwksCache.getUnchecked(jwtIssuerCerts);
+            } else if (!publicKeyMap.containsKey(jwt.getKeyId())
+                    && jwksFetchCache.asMap().putIfAbsent(jwtIssuerCerts, Boolean.TRUE) == null) {
+                publicKeyMap = fetchPublicKeys(jwtIssuerCerts);
+                jwksCache.put(jwtIssuerCerts, publicKeyMap);
+            }
+            return publicKeyMap.get(jwt.getKeyId());
+        } catch (UncheckedExecutionException e) {
+            jwksFetchCache.put(jwtIssuerCerts, Boolean.TRUE);
+            log.warn("Error getting the public keys of the jwt issuer at: " + jwtIssuerCerts + " - " + e.getCause().getMessage());
+            return null;
+        } catch (UncheckedIOException | IllegalArgumentException | IllegalStateException e) {
+            log.warn("Error getting the public keys of the jwt issuer at: " + jwtIssuerCerts + " - " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Fetch the public keys of an issuer.
+     *
+     * @param jwtIssuerCerts URL of the issuer certificates
+     * @return Public keys by key ID
+     * @throws IllegalStateException Error calling the issuer, or no public key found
+     */
+    private static Map<String, RSAPublicKey> fetchPublicKeys(String jwtIssuerCerts) {
         Request request = new Request.Builder()
                 .url(jwtIssuerCerts)
                 .get()
                 .build();
         try (Response response = client.newCall(request).execute()) {
             log.info("Successfully called the jwt issuer at: " + jwtIssuerCerts + " - " + response.code());
-            assert response.body() != null;
-            if (response.isSuccessful()) {
-                try (Reader reader = response.body().charStream()) {
-                    try (JsonReader jsonReader = Json.createReader(reader)) {
-                        JsonObject jwks = jsonReader.readObject();
-                        JsonArray keys = jwks.getJsonArray("keys");
-                        publicKey = keys.stream().filter(key -> Objects.equals(key.asJsonObject().getString("kid"),
-                                        jwt.getKeyId()))
-                                .findFirst()
-                                .map(k -> k.asJsonObject().getJsonArray("x5c").getString(0))
-                                .orElse("");
-                        var decode = Base64.getDecoder().decode(publicKey);
-                        var certificate = CertificateFactory.getInstance("X.509")
-                                .generateCertificate(new ByteArrayInputStream(decode));
-                        rsaPublicKey = (RSAPublicKey) certificate.getPublicKey();
+            if (!response.isSuccessful() || response.body() == null) {
+                throw new IllegalStateException("Error calling the jwt issuer at: " + jwtIssuerCerts + " - " + response.code());
+            }
+
+            Map<String, RSAPublicKey> publicKeyMap = new HashMap<>();
+            try (JsonReader jsonReader = Json.createReader(response.body().charStream())) {
+                CertificateFactory certificateFactory = CertificateFactory.getInstance("X.509");
+                for (JsonValue key : jsonReader.readObject().getJsonArray("keys")) {
+                    JsonObject keyObject = key.asJsonObject();
+                    String keyId = keyObject.getString("kid", null);
+                    if (keyId == null || !keyObject.containsKey("x5c")) {
+                        continue;
+                    }
+                    var decode = Base64.getDecoder().decode(keyObject.getJsonArray("x5c").getString(0));
+                    PublicKey publicKey = certificateFactory
+                            .generateCertificate(new ByteArrayInputStream(decode))
+                            .getPublicKey();
+                    if (publicKey instanceof RSAPublicKey) {
+                        publicKeyMap.put(keyId, (RSAPublicKey) publicKey);
                     }
                 }
             }
+            if (publicKeyMap.isEmpty()) {
+                throw new IllegalStateException("No public key found at: " + jwtIssuerCerts);
+            }
+            return publicKeyMap;
         } catch (IOException e) {
-            log.error("Error calling the jwt issuer at: " + jwtIssuerCerts, e);
+            throw new UncheckedIOException("Error calling the jwt issuer at: " + jwtIssuerCerts, e);
         } catch (CertificateException e) {
-            log.error("Error in getting the certificate: ", e);
+            throw new IllegalStateException("Error in getting the certificate: ", e);
         }
-        return rsaPublicKey;
     }
 
-    private JWTVerifier buildJWTVerifier(DecodedJWT jwt) throws CertificateException {
+    private JWTVerifier buildJWTVerifier(DecodedJWT jwt) {
         var algo = Algorithm.RSA256(getPublicKey(jwt), null);
         return JWT.require(algo).build();
     }
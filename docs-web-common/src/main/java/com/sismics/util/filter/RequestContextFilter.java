@@ -1,5 +1,6 @@
 package com.sismics.util.filter;
 
+import com.sismics.docs.core.constant.Constants;
 import com.sismics.docs.core.model.context.AppContext;
 import com.sismics.docs.core.util.DirectoryUtil;
 import com.sismics.docs.core.util.TransactionUtil;
@@ -7,11 +8,14 @@ import com.sismics.util.EnvironmentUtil;
 import com.sismics.util.context.ThreadLocalContext;
 import com.sismics.util.jpa.EMF;
 import jakarta.servlet.*;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import jakarta.ws.rs.HttpMethod;
 import jakarta.ws.rs.core.HttpHeaders;
 import org.apache.log4j.Level;
 import org.apache.log4j.PatternLayout;
 import org.apache.log4j.RollingFileAppender;
+import org.hibernate.Session;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.bridge.SLF4JBridgeHandler;
@@ -32,6 +36,11 @@ public class RequestContextFilter implements Filter {
      */
     private static final Logger log = LoggerFactory.getLogger(RequestContextFilter.class);
 
+    /**
+     * True if the entities are loaded in read-only mode in GET requests.
+     */
+    private boolean readOnlyGet;
+
     @Override
     public void init(FilterConfig filterConfig) {
         // Initialize the app directory
@@ -63,6 +72,9 @@ public class RequestContextFilter implements Filter {
         
         // Initialize the application context
         TransactionUtil.handle(AppContext::getInstance);
+
+        // GET requests don't modify the entities they load, the snapshots used for dirty checking can be skipped
+        readOnlyGet = Boolean.parseBoolean(System.getenv(Constants.READ_ONLY_GET_ENV));
     }
 
     @Override
@@ -79,6 +91,9 @@ public class RequestContextFilter implements Filter {
         } catch (Exception e) {
             throw new ServletException("Cannot create entity manager", e);
         }
+        if (readOnlyGet && HttpMethod.GET.equals(((HttpServletRequest) request).getMethod())) {
+            em.unwrap(Session.class).setDefaultReadOnly(true);
+        }
         ThreadLocalContext context = ThreadLocalContext.get();
         context.setEntityManager(em);
         EntityTransaction tx = em.getTransaction();
@@ -118,6 +133,7 @@ public class RequestContextFilter implements Filter {
                 if (statusClass == 2 || statusClass == 3) {
                     try {
                         em.getTransaction().commit();
+                        context.runCommitActions();
                     } catch (Exception e) {
                         log.error("Error during commit", e);
                         r.sendError(500);
@@ -8,6 +8,7 @@ import com.sismics.docs.core.dao.criteria.GroupCriteria;
 import com.sismics.docs.core.dao.dto.GroupDto;
 import com.sismics.docs.core.model.jpa.User;
 import com.sismics.security.AnonymousPrincipal;
+import com.sismics.security.PrincipalCache;
 import com.sismics.security.UserPrincipal;
 import org.joda.time.DateTimeZone;
 import org.slf4j.Logger;
@@ -54,11 +55,13 @@ public abstract class SecurityFilter implements Filter {
      *
      * @param request HTTP request
      * @param user nullable User to inject
+     * @param cacheKey nullable Key to cache the principal with
+     * @param cacheGeneration Principal cache generation read before authenticating the user
      */
-    private void injectUser(HttpServletRequest request, User user) {
+    private void injectUser(HttpServletRequest request, User user, String cacheKey, long cacheGeneration) {
         // Check if the user is still valid
         if (user != null && user.getDeleteDate() == null && user.getDisableDate() == null) {
-            injectAuthenticatedUser(request, user);
+            injectAuthenticatedUser(request, user, cacheKey, cacheGeneration);
         } else {
             injectAnonymousUser(request);
         }
@@ -69,8 +72,10 @@ public abstract class SecurityFilter implements Filter {
      *
      * @param request HTTP request
      * @param user User to inject
+     * @param cacheKey nullable Key to cache the principal with
+     * @param cacheGeneration Principal cache generation read before authenticating the user
      */
-    private void injectAuthenticatedUser(HttpServletRequest request, User user) {
+    private void injectAuthenticatedUser(HttpServletRequest request, User user, String cacheKey, long cacheGeneration) {
         UserPrincipal userPrincipal = new UserPrincipal(user.getId(), user.getUsername());
 
         // Add groups
@@ -97,6 +102,9 @@ public abstract class SecurityFilter implements Filter {
         // Add email
         userPrincipal.setEmail(user.getEmail());
 
+        if (cacheKey != null) {
+            PrincipalCache.put(cacheKey, userPrincipal, cacheGeneration);
+        }
         request.setAttribute(PRINCIPAL_ATTRIBUTE, userPrincipal);
     }
 
@@ -127,8 +135,15 @@ public abstract class SecurityFilter implements Filter {
         HttpServletRequest request = (HttpServletRequest) req;
 
         if (!hasIdentifiedUser(request)) {
-            User user = authenticate(request);
-            injectUser(request, user);
+            String cacheKey = getPrincipalCacheKey(request);
+            UserPrincipal userPrincipal = cacheKey == null ? null : PrincipalCache.get(cacheKey);
+            if (userPrincipal != null) {
+                request.setAttribute(PRINCIPAL_ATTRIBUTE, userPrincipal);
+            } else {
+                long cacheGeneration = PrincipalCache.getGeneration();
+                User user = authenticate(request);
+                injectUser(request, user, cacheKey, cacheGeneration);
+            }
         }
 
         filterChain.doFilter(request, response);
@@ -142,4 +157,15 @@ public abstract class SecurityFilter implements Filter {
      */
     protected abstract User authenticate(HttpServletRequest request);
 
+    /**
+     * Returns the key identifying the authenticated principal of a request in the PrincipalCache.
+     * By default, principals are not cached.
+     *
+     * @param request HTTP request
+     * @return nullable Cache key
+     */
+    protected String getPrincipalCacheKey(HttpServletRequest request) {
+        return null;
+    }
+
 }
\ No newline at end of file
@@ -106,4 +106,9 @@ public class TokenBasedSecurityFilter extends SecurityFilter {
 
         return new UserDao().getById(authToken.getUserId());
     }
+
+    @Override
+    protected String getPrincipalCacheKey(HttpServletRequest request) {
+        return extractAuthToken(request.getCookies());
+    }
 }
@@ -0,0 +1,124 @@
+package com.sismics.util.filter;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test of the public keys cache of the JWT authentication.
+ */
+public class TestJwtBasedSecurityFilter {
+    /**
+     * Certificates published by the mocked issuers, with a single key.
+     */
+    private static final String JWKS = "{\"keys\":[{\"kid\":\"key1\",\"kty\":\"RSA\",\"alg\":\"RS256\",\"use\":\"sig\",\"x5c\":[\""
+            + "MIICxDCCAaygAwIBAgIJAJFRh5CcS0uDMA0GCSqGSIb3DQEBCwUAMA8xDTALBgNVBAMTBHRlc3QwIBcN"
+            + "MjYxMDE4MjM0NDI0WhgPMjEyNjA5MjQyMzQ0MjRaMA8xDTALBgNVBAMTBHRlc3QwggEiMA0GCSqGSIb3"
+            + "DQEBAQUAA4IBDwAwggEKAoIBAQDpgy0QHiho8vxu6nUU3WsLwpzwdz2Vw6RfAkJrLdoWBXlmmLjJAt2S"
+            + "tMX9XIabhxsLgK1vOE/2+xqUNXv2q63L+eyk6YSwM/ILsouN8EZrJAoKC5GYmSNuuBkn9jt9rVIrotVh"
+            + "cMODyZA1ijp3D3uZ8tZABZyZ5HxsNygfmUOtBjenaziSdiI50/I9NhqeJ9d9dV1ReHHHHRCyrav2TPoc"
+            + "oTucj6SOF1SEL1bOyqJzG5UI1fjIi/NdqnjAQNOq7ChGRmA4Pmg/0Tj6TP/lsSt3wIvH8HmhjOut8QnG"
+            + "rV1gbXxNJafajKmh+w73NDlbFa3Z5Q3IcPW56qJlaSdPs8y7AgMBAAGjITAfMB0GA1UdDgQWBBR+pYKs"
+            + "gj042E2YC/GugwlySt1CPzANBgkqhkiG9w0BAQsFAAOCAQEAiWPa6eBAzCF6FElt6m5dUssT3p/lqT9g"
+            + "ueLkHGDFdhI0Y+o+DhTJ4rXMXCeefzutGwFJQiLTewJCtNbYv43DOfIees6hdW0Gp/UTRcUXJ8NAVXIv"
+            + "14/lJzi+dB41flQ4pf+y87c/Re/i+SnIhqO26VPq01hFxuxT/SKfJHUnvOK+Wlg3pUrXSxwO4YXHHHaB"
+            + "/nA1nK27Fo7Oq90FDttsT4SBQ11WTsNcP3FF8ECjkv+svFNBbGUhNduqyqdNJp6vn4oppdV+Vq9itamL"
+            + "5EZA7Vg1ciaMd4HQLvJMhEmGIrtp6RKuLDEZMfGfwuI/8yIBxDrXoMllIuzXBrsDhPjLQA=="
+            + "\"]}]}";
+
+    private HttpServer server;
+
+    private final AtomicInteger validFetchCount = new AtomicInteger();
+
+    private final AtomicInteger failingFetchCount = new AtomicInteger();
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/realms/valid/protocol/openid-connect/certs", exchange -> {
+            validFetchCount.incrementAndGet();
+            try {
+                // Slow issuer, so the concurrent requests wait for the same fetch
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                // NOP
+            }
+            byte[] body = JWKS.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(body);
+            }
+        });
+        server.createContext("/realms/failing/protocol/openid-connect/certs", exchange -> {
+            failingFetchCount.incrementAndGet();
+            exchange.sendResponseHeaders(500, -1);
+            exchange.close();
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testGetPublicKey() throws Exception {
+        JwtBasedSecurityFilter filter = new JwtBasedSecurityFilter();
+        String validIssuer = "http://localhost:" + server.getAddress().getPort() + "/realms/valid";
+
+        // Concurrent requests on a cold cache fetch the certificates once
+        ExecutorService executor = Executors.newFixedThreadPool(5);
+        List<Future<Boolean>> futureList = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            futureList.add(executor.submit(() -> filter.getPublicKey(decode(validIssuer, "key1")) != null));
+        }
+        for (Future<Boolean> future : futureList) {
+            Assert.assertTrue(future.get());
+        }
+        executor.shutdown();
+        Assert.assertEquals(1, validFetchCount.get());
+
+        // Cache hit
+        Assert.assertNotNull(filter.getPublicKey(decode(validIssuer, "key1")));
+        Assert.assertEquals(1, validFetchCount.get());
+
+        // An unknown key ID fetches the certificates again, once in a while
+        Assert.assertNull(filter.getPublicKey(decode(validIssuer, "key2")));
+        Assert.assertEquals(2, validFetchCount.get());
+        Assert.assertNull(filter.getPublicKey(decode(validIssuer, "key2")));
+        Assert.assertEquals(2, validFetchCount.get());
+        Assert.assertNotNull(filter.getPublicKey(decode(validIssuer, "key1")));
+
+        // A failing issuer is not fetched again on each request
+        String failingIssuer = "http://localhost:" + server.getAddress().getPort() + "/realms/failing";
+        Assert.assertNull(filter.getPublicKey(decode(failingIssuer, "key1")));
+        Assert.assertEquals(1, failingFetchCount.get());
+        Assert.assertNull(filter.getPublicKey(decode(failingIssuer, "key1")));
+        Assert.assertEquals(1, failingFetchCount.get());
+    }
+
+    private static DecodedJWT decode(String issuer, String keyId) {
+        return JWT.decode(JWT.create()
+                .withIssuer(issuer)
+                .withKeyId(keyId)
+                .sign(Algorithm.none()));
+    }
+}
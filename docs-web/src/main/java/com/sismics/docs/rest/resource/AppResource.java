@@ -3,6 +3,7 @@ package com.sismics.docs.rest.resource;
 import com.google.common.base.Strings;
 import com.sismics.docs.core.constant.ConfigType;
 import com.sismics.docs.core.constant.Constants;
+import com.sismics.docs.core.constant.FileProcessingLane;
 import com.sismics.docs.core.dao.ConfigDao;
 import com.sismics.docs.core.dao.DocumentDao;
 import com.sismics.docs.core.dao.FileDao;
@@ -11,9 +12,11 @@ import com.sismics.docs.core.event.RebuildIndexAsyncEvent;
 import com.sismics.docs.core.model.context.AppContext;
 import com.sismics.docs.core.model.jpa.Config;
 import com.sismics.docs.core.model.jpa.File;
+import com.sismics.docs.core.service.FileProcessingService;
 import com.sismics.docs.core.service.InboxService;
 import com.sismics.docs.core.util.ConfigUtil;
 import com.sismics.docs.core.util.DirectoryUtil;
+import com.sismics.docs.core.util.indexing.IndexRebuildProgress;
 import com.sismics.docs.core.util.jpa.PaginatedList;
 import com.sismics.docs.core.util.jpa.PaginatedLists;
 import com.sismics.docs.rest.constant.BaseFunction;
@@ -23,6 +26,7 @@ import com.sismics.rest.exception.ServerException;
 import com.sismics.rest.util.ValidationUtil;
 import com.sismics.util.JsonUtil;
 import com.sismics.util.context.ThreadLocalContext;
+import com.sismics.util.jpa.ConnectionPoolMetrics;
 import com.sismics.util.log4j.LogCriteria;
 import com.sismics.util.log4j.LogEntry;
 import com.sismics.util.log4j.MemoryAppender;
@@ -74,6 +78,29 @@ public class AppResource extends BaseResource {
      * @apiSuccess {String} active_user_count Number of active users
      * @apiSuccess {String} global_storage_current Global storage currently used (in bytes)
      * @apiSuccess {String} global_storage_quota Maximum global storage (in bytes)
+     * @apiSuccess {Object} index_rebuild Index rebuild progress
+     * @apiSuccess {Boolean} index_rebuild.running True if the index is being rebuilt
+     * @apiSuccess {Number} index_rebuild.start_date Start date of the last rebuild (timestamp)
+     * @apiSuccess {Number} index_rebuild.end_date End date of the last rebuild (timestamp)
+     * @apiSuccess {Number} index_rebuild.document_count Number of documents to index
+     * @apiSuccess {Number} index_rebuild.document_indexed Number of documents indexed
+     * @apiSuccess {Number} index_rebuild.file_count Number of files to index
+     * @apiSuccess {Number} index_rebuild.file_indexed Number of files indexed
+     * @apiSuccess {Object} file_processing File processing queue
+     * @apiSuccess {Number} file_processing.active Number of files being processed
+     * @apiSuccess {Number} file_processing.queue_size Maximum number of waiting files in each lane
+     * @apiSuccess {Number} file_processing.interactive Number of uploaded files waiting to be processed
+     * @apiSuccess {Number} file_processing.batch Number of imported files waiting to be processed
+     * @apiSuccess {Number} file_processing.reprocess Number of files waiting to be processed again
+     * @apiSuccess {Object} database_pool Database connection pool
+     * @apiSuccess {Number} database_pool.active Number of connections in use
+     * @apiSuccess {Number} database_pool.idle Number of idle connections
+     * @apiSuccess {Number} database_pool.waiting Number of requests waiting for a connection
+     * @apiSuccess {Number} database_pool.max Maximum number of connections
+     * @apiSuccess {Number} database_pool.acquire_count Number of connections acquired
+     * @apiSuccess {Number} database_pool.acquire_average Average time to acquire a connection (in microseconds)
+     * @apiSuccess {Number} database_pool.acquire_max Longest time to acquire a connection (in microseconds)
+     * @apiSuccess {Number} database_pool.timeout_count Number of connection acquisitions timed out
      * @apiPermission none
      * @apiVersion 1.5.0
      *
@@ -111,6 +138,39 @@ public class AppResource extends BaseResource {
             response.add("global_storage_quota", globalQuota);
         }
 
+        IndexRebuildProgress indexRebuildProgress = AppContext.getInstance().getIndexRebuildProgress();
+        JsonObjectBuilder indexRebuild = Json.createObjectBuilder()
+                .add("running", indexRebuildProgress.isRunning())
+                .add("document_count", indexRebuildProgress.getDocumentCount())
+                .add("document_indexed", indexRebuildProgress.getIndexedDocumentCount())
+                .add("file_count", indexRebuildProgress.getFileCount())
+                .add("file_indexed", indexRebuildProgress.getIndexedFileCount());
+        if (indexRebuildProgress.getStartDate() != null) {
+            indexRebuild.add("start_date", indexRebuildProgress.getStartDate().getTime());
+        }
+        if (indexRebuildProgress.getEndDate() != null) {
+            indexRebuild.add("end_date", indexRebuildProgress.getEndDate().getTime());
+        }
+        response.add("index_rebuild", indexRebuild);
+
+        FileProcessingService fileProcessingService = AppContext.getInstance().getFileProcessingService();
+        JsonObjectBuilder fileProcessing = Json.createObjectBuilder()
+                .add("active", fileProcessingService.getActiveCount())
+                .add("queue_size", fileProcessingService.getQueueSize());
+        for (FileProcessingLane lane : FileProcessingLane.values()) {
+            fileProcessing.add(lane.name().toLowerCase(), fileProcessingService.getQueuedCount(lane));
+        }
+        response.add("file_processing", fileProcessing);
+        response.add("database_pool", Json.createObjectBuilder()
+                .add("active", ConnectionPoolMetrics.getActiveCount())
+                .add("idle", ConnectionPoolMetrics.getIdleCount())
+                .add("waiting", ConnectionPoolMetrics.getWaitingCount())
+                .add("max", ConnectionPoolMetrics.getMaxCount())
+                .add("acquire_count", ConnectionPoolMetrics.getAcquireCount())
+                .add("acquire_average", ConnectionPoolMetrics.getAcquireAverageMicros())
+                .add("acquire_max", ConnectionPoolMetrics.getAcquireMaxMicros())
+                .add("timeout_count", ConnectionPoolMetrics.getTimeoutCount()));
+
         return Response.ok().entity(response.build()).build();
     }
 
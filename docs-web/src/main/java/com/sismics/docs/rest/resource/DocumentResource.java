@@ -85,6 +85,7 @@ import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Properties;
 import java.util.Set;
 import java.util.UUID;
@@ -831,6 +832,7 @@ public class DocumentResource extends BaseResource {
         }
 
         // Update the document
+        boolean languageChanged = !Objects.equals(language, document.getLanguage());
         document.setTitle(title);
         document.setDescription(description);
         document.setSubject(subject);
@@ -867,6 +869,7 @@ public class DocumentResource extends BaseResource {
         DocumentUpdatedAsyncEvent documentUpdatedAsyncEvent = new DocumentUpdatedAsyncEvent();
         documentUpdatedAsyncEvent.setUserId(principal.getId());
         documentUpdatedAsyncEvent.setDocumentId(id);
+        documentUpdatedAsyncEvent.setLanguageChanged(languageChanged);
         ThreadLocalContext.get().addAsyncEvent(documentUpdatedAsyncEvent);
 
         JsonObjectBuilder response = Json.createObjectBuilder()
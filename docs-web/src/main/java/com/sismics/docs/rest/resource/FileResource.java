@@ -3,6 +3,7 @@ package com.sismics.docs.rest.resource;
 import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
 import com.google.common.io.ByteStreams;
+import com.sismics.docs.core.constant.FileProcessingLane;
 import com.sismics.docs.core.constant.PermType;
 import com.sismics.docs.core.dao.AclDao;
 import com.sismics.docs.core.dao.DocumentDao;
@@ -18,6 +19,7 @@ import com.sismics.docs.core.model.jpa.User;
 import com.sismics.docs.core.util.DirectoryUtil;
 import com.sismics.docs.core.util.EncryptionUtil;
 import com.sismics.docs.core.util.FileUtil;
+import com.sismics.docs.rest.util.AssetUtil;
 import com.sismics.rest.exception.ClientException;
 import com.sismics.rest.exception.ForbiddenClientException;
 import com.sismics.rest.exception.ServerException;
@@ -34,18 +36,18 @@ import jakarta.json.Json;
 import jakarta.json.JsonArrayBuilder;
 import jakarta.json.JsonObjectBuilder;
 import jakarta.ws.rs.*;
+import jakarta.ws.rs.core.EntityTag;
 import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.Response.Status;
 import jakarta.ws.rs.core.StreamingOutput;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.URISyntaxException;
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
-import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
 import java.text.MessageFormat;
 import java.util.List;
@@ -80,6 +82,7 @@ public class FileResource extends BaseResource {
      * @apiError (server) ErrorGuessMime Error guessing mime type
      * @apiError (client) QuotaReached Quota limit reached
      * @apiError (server) FileError Error adding a file
+     * @apiError (server) ProcessingQueueFull Too many files waiting to be processed, retry later
      * @apiPermission user
      * @apiVersion 1.5.0
      *
@@ -99,6 +102,7 @@ public class FileResource extends BaseResource {
         
         // Validate input data
         ValidationUtil.validateRequired(fileBodyPart, "file");
+        checkProcessingCapacity(FileProcessingLane.INTERACTIVE);
 
         // Get the document
         DocumentDto documentDto = null;
@@ -200,13 +204,12 @@ public class FileResource extends BaseResource {
         try {
             java.nio.file.Path storedFile = DirectoryUtil.getStorageDirectory().resolve(id);
             java.nio.file.Path unencryptedFile = EncryptionUtil.decryptFile(storedFile, user.getPrivateKey());
-            FileUtil.startProcessingFile(id);
             FileUpdatedAsyncEvent fileUpdatedAsyncEvent = new FileUpdatedAsyncEvent();
             fileUpdatedAsyncEvent.setUserId(principal.getId());
             fileUpdatedAsyncEvent.setLanguage(documentDto.getLanguage());
             fileUpdatedAsyncEvent.setFileId(file.getId());
             fileUpdatedAsyncEvent.setUnencryptedFile(unencryptedFile);
-            ThreadLocalContext.get().addAsyncEvent(fileUpdatedAsyncEvent);
+            FileUtil.startProcessingFile(fileUpdatedAsyncEvent);
             
             DocumentUpdatedAsyncEvent documentUpdatedAsyncEvent = new DocumentUpdatedAsyncEvent();
             documentUpdatedAsyncEvent.setUserId(principal.getId());
@@ -275,6 +278,7 @@ public class FileResource extends BaseResource {
      * @apiError (client) ForbiddenError Access denied
      * @apiError (client) ValidationError Validation error
      * @apiError (server) ProcessingError Processing error
+     * @apiError (server) ProcessingQueueFull Too many files waiting to be processed, retry later
      * @apiPermission user
      * @apiVersion 1.6.0
      *
@@ -300,6 +304,8 @@ public class FileResource extends BaseResource {
             throw new NotFoundException();
         }
 
+        checkProcessingCapacity(FileProcessingLane.REPROCESS);
+
         // Get the creating user
         UserDao userDao = new UserDao();
         User user = userDao.getById(file.getUserId());
@@ -308,13 +314,13 @@ public class FileResource extends BaseResource {
         try {
             java.nio.file.Path storedFile = DirectoryUtil.getStorageDirectory().resolve(id);
             java.nio.file.Path unencryptedFile = EncryptionUtil.decryptFile(storedFile, user.getPrivateKey());
-            FileUtil.startProcessingFile(id);
             FileUpdatedAsyncEvent event = new FileUpdatedAsyncEvent();
             event.setUserId(principal.getId());
             event.setLanguage(documentDto.getLanguage());
             event.setFileId(file.getId());
             event.setUnencryptedFile(unencryptedFile);
-            ThreadLocalContext.get().addAsyncEvent(event);
+            event.setLane(FileProcessingLane.REPROCESS);
+            FileUtil.startProcessingFile(event);
         } catch (Exception e) {
             throw new ServerException("ProcessingError", "Error processing this file", e);
         }
@@ -544,6 +550,7 @@ public class FileResource extends BaseResource {
     
     /**
      * Returns a file.
+     * Stored files support single byte ranges (Range, If-Range) and conditional requests (If-None-Match).
      *
      * @api {get} /file/:id/data Get a file data
      * @apiName GetFile
@@ -582,7 +589,6 @@ public class FileResource extends BaseResource {
         UserDao userDao = new UserDao();
         java.nio.file.Path storedFile;
         String mimeType;
-        boolean decrypt;
         if (size != null) {
             if (size.equals("content")) {
                 return Response.ok(Strings.nullToEmpty(file.getContent()))
@@ -592,34 +598,78 @@ public class FileResource extends BaseResource {
 
             storedFile = DirectoryUtil.getStorageDirectory().resolve(fileId + "_" + size);
             mimeType = MimeType.IMAGE_JPEG; // Thumbnails are JPEG
-            decrypt = true; // Thumbnails are encrypted
             if (!Files.exists(storedFile)) {
-                try {
-                    storedFile = Paths.get(getClass().getResource("/image/file-" + size + ".png").toURI());
-                } catch (URISyntaxException e) {
-                    // Ignore
+                // The thumbnail is not generated yet, send a placeholder revalidated on each request
+                AssetUtil.Asset placeholder = AssetUtil.getClasspathAsset("/image/file-" + size + ".png");
+                Response.ResponseBuilder builder;
+                if (AssetUtil.matchesEntityTag(request.getHeader(HttpHeaders.IF_NONE_MATCH), placeholder.getEntityTag())) {
+                    builder = Response.notModified(placeholder.getEntityTag());
+                } else {
+                    builder = Response.ok(placeholder.getData())
+                            .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + file.getFullName("data") + "\"")
+                            .header(HttpHeaders.CONTENT_TYPE, MimeType.IMAGE_PNG)
+                            .tag(placeholder.getEntityTag());
                 }
-                mimeType = MimeType.IMAGE_PNG;
-                decrypt = false;
+                return builder.header(HttpHeaders.CACHE_CONTROL, "no-cache")
+                        .header(HttpHeaders.EXPIRES, "0")
+                        .build();
             }
         } else {
             storedFile = DirectoryUtil.getStorageDirectory().resolve(fileId);
             mimeType = file.getMimeType();
-            decrypt = true; // Original files are encrypted
         }
         
-        // Stream the output and decrypt it if necessary
-        StreamingOutput stream;
-        
         // A file is always encrypted by the creator of it
         User user = userDao.getById(file.getUserId());
+
+        // The stored data of a file never changes, the thumbnails can be generated again
+        EntityTag entityTag;
+        long length;
+        try {
+            length = Files.size(storedFile);
+            String tag = fileId + "-" + file.getVersion();
+            if (size != null) {
+                tag += "-" + size + "-" + Files.getLastModifiedTime(storedFile).toMillis();
+            }
+            entityTag = new EntityTag(tag);
+        } catch (IOException e) {
+            return Response.status(Status.SERVICE_UNAVAILABLE).build();
+        }
+
+        if (AssetUtil.matchesEntityTag(request.getHeader(HttpHeaders.IF_NONE_MATCH), entityTag)) {
+            return addFileCacheHeaders(Response.notModified(entityTag)).build();
+        }
+
+        // Serve only the requested range, unless the file changed since the client got the first part
+        long[] range = null;
+        String ifRange = request.getHeader("If-Range");
+        if (ifRange == null || AssetUtil.matchesEntityTag(ifRange, entityTag)) {
+            range = parseRange(request.getHeader("Range"), length);
+        }
+        if (range != null && range.length == 0) {
+            return Response.status(Status.REQUESTED_RANGE_NOT_SATISFIABLE)
+                    .header("Content-Range", "bytes */" + length)
+                    .build();
+        }
+
+        // Stream the decrypted output
+        StreamingOutput stream;
         
         // Write the decrypted file to the output
         try {
-            InputStream fileInputStream = Files.newInputStream(storedFile);
-            final InputStream responseInputStream = decrypt ?
-                    EncryptionUtil.decryptInputStream(fileInputStream, user.getPrivateKey()) : fileInputStream;
-                    
+            long offset = range == null ? 0 : range[0];
+            InputStream inputStream;
+            if (size == null) {
+                inputStream = EncryptionUtil.decryptInputStream(Files.newInputStream(storedFile), user.getPrivateKey(), offset);
+            } else {
+                // Thumbnails are small and requested often, they are kept decrypted in memory
+                inputStream = new ByteArrayInputStream(AppContext.getInstance().getThumbnailCache()
+                        .get(fileId, size, user.getPrivateKey()));
+                ByteStreams.skipFully(inputStream, offset);
+            }
+            final InputStream responseInputStream = range == null ?
+                    inputStream : ByteStreams.limit(inputStream, range[1] - range[0] + 1);
+
             stream = outputStream -> {
                 try {
                     ByteStreams.copy(responseInputStream, outputStream);
@@ -636,19 +686,92 @@ public class FileResource extends BaseResource {
             return Response.status(Status.SERVICE_UNAVAILABLE).build();
         }
 
-        Response.ResponseBuilder builder = Response.ok(stream)
+        Response.ResponseBuilder builder = (range == null ? Response.ok(stream) : Response.status(Status.PARTIAL_CONTENT).entity(stream))
                 .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + file.getFullName("data") + "\"")
-                .header(HttpHeaders.CONTENT_TYPE, mimeType);
-        if (decrypt) {
-            // Cache real files
-            builder.header(HttpHeaders.CACHE_CONTROL, "private")
-                    .header(HttpHeaders.EXPIRES, HttpUtil.buildExpiresHeader(3_600_000L * 24L * 365L));
-        } else {
-            // Do not cache the temporary thumbnail
-            builder.header(HttpHeaders.CACHE_CONTROL, "no-store, must-revalidate")
-                    .header(HttpHeaders.EXPIRES, "0");
+                .header(HttpHeaders.CONTENT_TYPE, mimeType)
+                .header("Accept-Ranges", "bytes")
+                .tag(entityTag);
+        if (range != null) {
+            builder.header("Content-Range", "bytes " + range[0] + "-" + range[1] + "/" + length)
+                    .header(HttpHeaders.CONTENT_LENGTH, range[1] - range[0] + 1);
+        }
+        return addFileCacheHeaders(builder).build();
+    }
+
+    /**
+     * Refuse the request if too many files are waiting to be processed in a lane.
+     *
+     * @param lane Processing lane
+     */
+    private void checkProcessingCapacity(FileProcessingLane lane) {
+        if (AppContext.getInstance().getFileProcessingService().isFull(lane)) {
+            throw new WebApplicationException(Response.status(Status.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, 60)
+                    .entity(Json.createObjectBuilder()
+                            .add("type", "ProcessingQueueFull")
+                            .add("message", "Too many files waiting to be processed, retry later")
+                            .build())
+                    .build());
+        }
+    }
+
+    /**
+     * Add the cache headers of a stored file data.
+     *
+     * @param builder Response builder
+     * @return Response builder
+     */
+    private Response.ResponseBuilder addFileCacheHeaders(Response.ResponseBuilder builder) {
+        return builder.header(HttpHeaders.CACHE_CONTROL, "private")
+                .header(HttpHeaders.EXPIRES, HttpUtil.buildExpiresHeader(3_600_000L * 24L * 365L));
+    }
+
+    /**
+     * Parse a Range header.
+     * Only one range is served, a multiple ranges request is answered with the whole data.
+     *
+     * @param header Range header value
+     * @param length Data length
+     * @return First and last bytes of the range, empty if the range is not satisfiable, null to send the whole data
+     */
+    private static long[] parseRange(String header, long length) {
+        if (header == null || !header.startsWith("bytes=") || header.contains(",")) {
+            return null;
+        }
+        String[] bounds = header.substring("bytes=".length()).trim().split("-", -1);
+        if (bounds.length != 2) {
+            return null;
+        }
+        try {
+            long start;
+            long end;
+            if (bounds[0].isEmpty()) {
+                // Suffix range: the last N bytes
+                long suffixLength = Long.parseLong(bounds[1]);
+                if (suffixLength <= 0) {
+                    return new long[0];
+                }
+                start = Math.max(length - suffixLength, 0);
+                end = length - 1;
+            } else {
+                start = Long.parseLong(bounds[0]);
+                end = length - 1;
+                if (!bounds[1].isEmpty()) {
+                    long lastByte = Long.parseLong(bounds[1]);
+                    if (lastByte < start) {
+                        // Invalid range, ignored
+                        return null;
+                    }
+                    end = Math.min(lastByte, length - 1);
+                }
+            }
+            if (start >= length) {
+                return new long[0];
+            }
+            return new long[] { start, end };
+        } catch (NumberFormatException e) {
+            return null;
         }
-        return builder.build();
     }
 
     /**
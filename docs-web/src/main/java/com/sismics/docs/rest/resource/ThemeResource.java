@@ -1,12 +1,12 @@
 package com.sismics.docs.rest.resource;
 
 import com.google.common.base.Strings;
-import com.google.common.io.ByteStreams;
 import com.sismics.docs.core.constant.ConfigType;
 import com.sismics.docs.core.dao.ConfigDao;
-import com.sismics.docs.core.model.jpa.Config;
+import com.sismics.docs.core.util.ConfigUtil;
 import com.sismics.docs.core.util.DirectoryUtil;
 import com.sismics.docs.rest.constant.BaseFunction;
+import com.sismics.docs.rest.util.AssetUtil;
 import com.sismics.rest.exception.ClientException;
 import com.sismics.rest.exception.ForbiddenClientException;
 import com.sismics.rest.exception.ServerException;
@@ -19,12 +19,11 @@ import org.glassfish.jersey.media.multipart.FormDataParam;
 
 import jakarta.json.*;
 import jakarta.ws.rs.*;
+import jakarta.ws.rs.core.EntityTag;
 import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.Response;
-import jakarta.ws.rs.core.StreamingOutput;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.io.StringReader;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
@@ -211,34 +210,30 @@ public class ThemeResource extends BaseResource {
     public Response getImage(@PathParam("type") final String type) {
         final java.nio.file.Path filePath = DirectoryUtil.getThemeDirectory().resolve(type);
 
-        // Copy the image to the response output
-        return Response.ok(new StreamingOutput() {
-            @Override
-            public void write(OutputStream outputStream) throws IOException, WebApplicationException {
-                InputStream inputStream = null;
-                try {
-                    if (Files.exists(filePath)) {
-                        inputStream = Files.newInputStream(filePath);
-                    } else {
-                        inputStream = getClass().getResource("/image/" + (type.equals("logo") ? "logo.png" : "background.jpg")).openStream();
-                    }
-                    ByteStreams.copy(inputStream, outputStream);
-                } finally {
-                    try {
-                        if (inputStream != null) {
-                            inputStream.close();
-                        }
-                        outputStream.close();
-                    } catch (IOException e) {
-                        // Ignore
-                    }
-                }
+        // Send the custom image from the disk, or the default image from memory
+        EntityTag entityTag;
+        Response.ResponseBuilder builder;
+        if (Files.exists(filePath)) {
+            try {
+                entityTag = AssetUtil.getFileEntityTag(filePath);
+            } catch (IOException e) {
+                throw new ServerException("ImageError", "Error reading the image", e);
             }
-        })
-        .header(HttpHeaders.CONTENT_TYPE, "image/*")
-        .header(HttpHeaders.CACHE_CONTROL, "public")
-        .header(HttpHeaders.EXPIRES, HttpUtil.buildExpiresHeader(3_600_000L * 24L * 15L))
-        .build();
+            builder = Response.ok(AssetUtil.streamFile(filePath));
+        } else {
+            AssetUtil.Asset asset = AssetUtil.getClasspathAsset("/image/" + (type.equals("logo") ? "logo.png" : "background.jpg"));
+            entityTag = asset.getEntityTag();
+            builder = Response.ok(asset.getData());
+        }
+
+        if (AssetUtil.matchesEntityTag(request.getHeader(HttpHeaders.IF_NONE_MATCH), entityTag)) {
+            builder = Response.notModified();
+        }
+        return builder.tag(entityTag)
+                .header(HttpHeaders.CONTENT_TYPE, "image/*")
+                .header(HttpHeaders.CACHE_CONTROL, "public")
+                .header(HttpHeaders.EXPIRES, HttpUtil.buildExpiresHeader(3_600_000L * 24L * 15L))
+                .build();
     }
 
     /**
@@ -247,13 +242,12 @@ public class ThemeResource extends BaseResource {
      * @return Theme configuration
      */
     private JsonObject getThemeConfig() {
-        ConfigDao configDao = new ConfigDao();
-        Config themeConfig = configDao.getById(ConfigType.THEME);
+        String themeConfig = ConfigUtil.getConfigStringValue(ConfigType.THEME, null);
         if (themeConfig == null) {
             return Json.createObjectBuilder().build();
         }
 
-        try (JsonReader reader = Json.createReader(new StringReader(themeConfig.getValue()))) {
+        try (JsonReader reader = Json.createReader(new StringReader(themeConfig))) {
             return reader.readObject();
         }
     }
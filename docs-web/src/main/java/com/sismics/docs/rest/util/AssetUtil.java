@@ -0,0 +1,118 @@
+package com.sismics.docs.rest.util;
+
+import com.google.common.hash.Hashing;
+import com.google.common.io.Resources;
+import jakarta.ws.rs.core.EntityTag;
+import jakarta.ws.rs.core.StreamingOutput;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Static assets utilities.
+ */
+public class AssetUtil {
+    /**
+     * Assets loaded from the classpath, by resource name.
+     */
+    private static final Map<String, Asset> classpathAssetMap = new ConcurrentHashMap<>();
+
+    /**
+     * Returns an asset from the classpath.
+     * The asset is read once and kept in memory.
+     *
+     * @param name Resource name
+     * @return Asset
+     */
+    public static Asset getClasspathAsset(String name) {
+        return classpathAssetMap.computeIfAbsent(name, key -> {
+            try {
+                byte[] data = Resources.toByteArray(Resources.getResource(AssetUtil.class, key));
+                return new Asset(data, new EntityTag(Hashing.sha256().hashBytes(data).toString()));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Returns the entity tag of a file, changing with its content.
+     *
+     * @param file File
+     * @return Entity tag
+     * @throws IOException e
+     */
+    public static EntityTag getFileEntityTag(Path file) throws IOException {
+        return new EntityTag(Files.size(file) + "-" + Files.getLastModifiedTime(file).toMillis());
+    }
+
+    /**
+     * Returns true if an If-None-Match or If-Range header matches an entity tag.
+     *
+     * @param header Header value, list of entity tags or *
+     * @param entityTag Entity tag
+     * @return True if the header matches
+     */
+    public static boolean matchesEntityTag(String header, EntityTag entityTag) {
+        if (header == null) {
+            return false;
+        }
+        String quotedTag = "\"" + entityTag.getValue() + "\"";
+        for (String tag : header.split(",")) {
+            tag = tag.trim();
+            if (tag.equals("*") || tag.equals(quotedTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Stream an unencrypted file.
+     * The file is copied to the response stream in small chunks, without loading it in memory.
+     *
+     * @param file File
+     * @return Streaming output
+     */
+    public static StreamingOutput streamFile(Path file) {
+        return outputStream -> {
+            try {
+                Files.copy(file, outputStream);
+            } finally {
+                outputStream.close();
+            }
+        };
+    }
+
+    /**
+     * Asset kept in memory.
+     */
+    public static class Asset {
+        /**
+         * Content.
+         */
+        private final byte[] data;
+
+        /**
+         * Entity tag, hash of the content.
+         */
+        private final EntityTag entityTag;
+
+        private Asset(byte[] data, EntityTag entityTag) {
+            this.data = data;
+            this.entityTag = entityTag;
+        }
+
+        public byte[] getData() {
+            return data;
+        }
+
+        public EntityTag getEntityTag() {
+            return entityTag;
+        }
+    }
+}
@@ -62,6 +62,13 @@ public class TestAppResource extends BaseJerseyTest {
         Assert.assertEquals("eng", json.getString("default_language"));
         Assert.assertTrue(json.containsKey("global_storage_current"));
         Assert.assertTrue(json.getJsonNumber("active_user_count").longValue() > 0);
+        JsonObject fileProcessing = json.getJsonObject("file_processing");
+        Assert.assertEquals(0, fileProcessing.getInt("interactive"));
+        Assert.assertEquals(0, fileProcessing.getInt("batch"));
+        Assert.assertEquals(0, fileProcessing.getInt("reprocess"));
+        JsonObject databasePool = json.getJsonObject("database_pool");
+        Assert.assertEquals(10, databasePool.getInt("max"));
+        Assert.assertTrue(databasePool.getJsonNumber("acquire_count").longValue() > 0);
 
         // Rebuild Lucene index
         Response response = target().path("/app/batch/reindex").request()
@@ -85,6 +92,9 @@ public class TestAppResource extends BaseJerseyTest {
         json = target().path("/app").request()
                 .get(JsonObject.class);
         Assert.assertEquals("fra", json.getString("default_language"));
+        JsonObject indexRebuild = json.getJsonObject("index_rebuild");
+        Assert.assertFalse(indexRebuild.getBoolean("running"));
+        Assert.assertTrue(indexRebuild.containsKey("end_date"));
 
         // Change the default language
         response = target().path("/app/config").request()
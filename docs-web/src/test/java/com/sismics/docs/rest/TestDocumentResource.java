@@ -472,6 +472,14 @@ public class TestDocumentResource extends BaseJerseyTest {
                 .cookie(TokenBasedSecurityFilter.COOKIE_NAME, documentOdtToken)
                 .get(JsonObject.class);
         Assert.assertEquals(1, json.getJsonArray("documents").size());
+
+        // Search documents by a stemmed form of a word in the content
+        json = target().path("/document/list")
+                .queryParam("search", "full:ipsums")
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, documentOdtToken)
+                .get(JsonObject.class);
+        Assert.assertEquals(1, json.getJsonArray("documents").size());
         
         // Get the file thumbnail data
         Response response = target().path("/file/" + file1Id + "/data")
@@ -0,0 +1,160 @@
+package com.sismics.docs.rest;
+
+import com.sismics.util.filter.TokenBasedSecurityFilter;
+import org.junit.Assert;
+import org.junit.Test;
+
+import jakarta.json.JsonArray;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonValue;
+import jakarta.ws.rs.client.Entity;
+import jakarta.ws.rs.client.WebTarget;
+import jakarta.ws.rs.core.Form;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Test the permissions, pagination and sorting of the document search.
+ */
+public class TestDocumentSearch extends BaseJerseyTest {
+    /**
+     * Test the documents readable through their ACL and their tags ACL.
+     */
+    @Test
+    public void testSearchAcl() {
+        // Login search1 and search2
+        clientUtil.createUser("search1");
+        String search1Token = clientUtil.login("search1");
+        clientUtil.createUser("search2");
+        String search2Token = clientUtil.login("search2");
+
+        // Create a tag and 3 documents with search1, 2 of them tagged
+        JsonObject json = target().path("/tag").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, search1Token)
+                .put(Entity.form(new Form()
+                        .param("name", "SearchTag")
+                        .param("color", "#ff0000")), JsonObject.class);
+        String tagId = json.getString("id");
+        createDocument(search1Token, "Search A", tagId);
+        String documentBId = createDocument(search1Token, "Search B", null);
+        createDocument(search1Token, "Search C", tagId);
+        Assert.assertEquals(Arrays.asList("Search A", "Search B", "Search C"), listTitles(search1Token, null));
+
+        // search2 has no ACL
+        Assert.assertEquals(0, listTitles(search2Token, null).size());
+        Assert.assertEquals(0, listTitles(search2Token, "Search").size());
+
+        // search2 reads the tagged documents through the tag ACL
+        json = target().path("/acl").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, search1Token)
+                .put(Entity.form(new Form()
+                        .param("source", tagId)
+                        .param("perm", "READ")
+                        .param("target", "search2")
+                        .param("type", "USER")), JsonObject.class);
+        String search2Id = json.getString("id");
+        Assert.assertEquals(Arrays.asList("Search A", "Search C"), listTitles(search2Token, null));
+        Assert.assertEquals(Arrays.asList("Search A", "Search C"), listTitles(search2Token, "Search"));
+
+        // search2 reads a document through its ACL, until it is revoked
+        target().path("/acl").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, search1Token)
+                .put(Entity.form(new Form()
+                        .param("source", documentBId)
+                        .param("perm", "READ")
+                        .param("target", "search2")
+                        .param("type", "USER")), JsonObject.class);
+        Assert.assertEquals(Arrays.asList("Search A", "Search B", "Search C"), listTitles(search2Token, null));
+        target().path("/acl/" + documentBId + "/READ/" + search2Id).request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, search1Token)
+                .delete(JsonObject.class);
+        Assert.assertEquals(Arrays.asList("Search A", "Search C"), listTitles(search2Token, null));
+
+        // The tag ACL doesn't apply anymore once the tag is deleted
+        target().path("/tag/" + tagId).request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, search1Token)
+                .delete(JsonObject.class);
+        Assert.assertEquals(0, listTitles(search2Token, null).size());
+        Assert.assertEquals(0, listTitles(search2Token, "Search").size());
+        Assert.assertEquals(Arrays.asList("Search A", "Search B", "Search C"), listTitles(search1Token, null));
+    }
+
+    /**
+     * Test the pagination and the sorting.
+     */
+    @Test
+    public void testSearchPagination() {
+        // Login page1 and create 5 documents
+        clientUtil.createUser("page1");
+        String page1Token = clientUtil.login("page1");
+        for (String title : new String[] { "Page D", "Page B", "Page E", "Page A", "Page C" }) {
+            createDocument(page1Token, title, null);
+        }
+
+        // Sorted by title
+        Assert.assertEquals(Arrays.asList("Page A", "Page B"), listTitles(page1Token, null, 1, true, 0, 2));
+        Assert.assertEquals(Arrays.asList("Page C", "Page D"), listTitles(page1Token, null, 1, true, 2, 2));
+        Assert.assertEquals(Arrays.asList("Page E"), listTitles(page1Token, null, 1, true, 4, 2));
+        Assert.assertEquals(Arrays.asList("Page E", "Page D", "Page C"), listTitles(page1Token, null, 1, false, 0, 3));
+        Assert.assertEquals(Arrays.asList("Page B", "Page A"), listTitles(page1Token, "Page", 1, false, 3, 3));
+
+        // Sorted by creation date, the documents are created one minute apart
+        Assert.assertEquals(Arrays.asList("Page D", "Page B", "Page E"), listTitles(page1Token, null, 3, true, 0, 3));
+        Assert.assertEquals(Arrays.asList("Page C", "Page A"), listTitles(page1Token, null, 3, false, 0, 2));
+
+        // Total of all pages
+        JsonObject json = target().path("/document/list")
+                .queryParam("limit", 2)
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, page1Token)
+                .get(JsonObject.class);
+        Assert.assertEquals(5, json.getJsonNumber("total").intValue());
+        Assert.assertEquals(2, json.getJsonArray("documents").size());
+    }
+
+    /**
+     * Documents created one minute apart, so they are sorted by creation date in creation order.
+     */
+    private long createDate = new Date().getTime() - 3600000L;
+
+    private String createDocument(String token, String title, String tagId) {
+        createDate += 60000L;
+        Form form = new Form()
+                .param("title", title)
+                .param("language", "eng")
+                .param("create_date", Long.toString(createDate));
+        if (tagId != null) {
+            form.param("tags", tagId);
+        }
+        JsonObject json = target().path("/document").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, token)
+                .put(Entity.form(form), JsonObject.class);
+        return json.getString("id");
+    }
+
+    private List<String> listTitles(String token, String search) {
+        return listTitles(token, search, 1, true, 0, 10);
+    }
+
+    private List<String> listTitles(String token, String search, int sortColumn, boolean asc, int offset, int limit) {
+        WebTarget webTarget = target().path("/document/list")
+                .queryParam("sort_column", sortColumn)
+                .queryParam("asc", asc)
+                .queryParam("offset", offset)
+                .queryParam("limit", limit);
+        if (search != null) {
+            webTarget = webTarget.queryParam("search", search);
+        }
+        JsonObject json = webTarget.request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, token)
+                .get(JsonObject.class);
+        JsonArray documents = json.getJsonArray("documents");
+        List<String> titleList = new ArrayList<>();
+        for (JsonValue document : documents) {
+            titleList.add(document.asJsonObject().getString("title"));
+        }
+        return titleList;
+    }
+}
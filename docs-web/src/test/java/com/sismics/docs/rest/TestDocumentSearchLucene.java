@@ -0,0 +1,12 @@
+package com.sismics.docs.rest;
+
+/**
+ * Test the document search with all the criteria resolved by Lucene (DOCS_LUCENE_FILTERING),
+ * with the same results as the database.
+ */
+public class TestDocumentSearchLucene extends TestDocumentSearch {
+    static {
+        // Read when the indexing handler starts
+        System.setProperty("docs.lucene_filtering", "true");
+    }
+}
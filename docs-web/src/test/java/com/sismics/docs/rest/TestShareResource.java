@@ -61,6 +61,14 @@ public class TestShareResource extends BaseJerseyTest {
             }
         }
         
+        // Search shared documents
+        json = target().path("/document/list")
+                .queryParam("search", "shared:yes")
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, share1Token)
+                .get(JsonObject.class);
+        Assert.assertEquals(0, json.getJsonArray("documents").size());
+
         // Share this document
         json = target().path("/share").request()
                 .cookie(TokenBasedSecurityFilter.COOKIE_NAME, share1Token)
@@ -69,6 +77,14 @@ public class TestShareResource extends BaseJerseyTest {
                         .param("name", "4 All")), JsonObject.class);
         String share1Id = json.getString("id");
         
+        // Search shared documents again, the share is visible immediately
+        json = target().path("/document/list")
+                .queryParam("search", "shared:yes")
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, share1Token)
+                .get(JsonObject.class);
+        Assert.assertEquals(1, json.getJsonArray("documents").size());
+
         // Get the document anonymously
         json = target().path("/document/" + document1Id)
                 .queryParam("share", share1Id)
@@ -120,6 +136,14 @@ public class TestShareResource extends BaseJerseyTest {
                 .delete(JsonObject.class);
         Assert.assertEquals("ok", json.getString("status"));
 
+        // Search shared documents again, the share is gone
+        json = target().path("/document/list")
+                .queryParam("search", "shared:yes")
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, share1Token)
+                .get(JsonObject.class);
+        Assert.assertEquals(0, json.getJsonArray("documents").size());
+
         // Deletes the share again
         response = target().path("/share/" + share1Id).request()
                 .cookie(TokenBasedSecurityFilter.COOKIE_NAME, share1Token)
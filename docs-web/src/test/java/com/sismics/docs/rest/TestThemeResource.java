@@ -11,6 +11,7 @@ import org.junit.Test;
 import jakarta.json.JsonObject;
 import jakarta.ws.rs.client.Entity;
 import jakarta.ws.rs.core.Form;
+import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 import java.io.InputStream;
@@ -65,6 +66,14 @@ public class TestThemeResource extends BaseJerseyTest {
         // Get the logo
         Response response = target().path("/theme/image/logo").request().get();
         Assert.assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        String logoEtag = response.getHeaderString(HttpHeaders.ETAG);
+        Assert.assertNotNull(logoEtag);
+
+        // Get the logo again, not modified
+        response = target().path("/theme/image/logo").request()
+                .header(HttpHeaders.IF_NONE_MATCH, logoEtag)
+                .get();
+        Assert.assertEquals(Response.Status.NOT_MODIFIED.getStatusCode(), response.getStatus());
 
         // Get the background
         response = target().path("/theme/image/background").request().get();
@@ -96,9 +105,14 @@ public class TestThemeResource extends BaseJerseyTest {
             }
         }
 
-        // Get the logo
-        response = target().path("/theme/image/logo").request().get();
+        // Get the new logo
+        response = target().path("/theme/image/logo").request()
+                .header(HttpHeaders.IF_NONE_MATCH, logoEtag)
+                .get();
         Assert.assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        Assert.assertNotEquals(logoEtag, response.getHeaderString(HttpHeaders.ETAG));
+        Assert.assertEquals(Resources.toByteArray(Resources.getResource("file/PIA00452.jpg")).length,
+                response.readEntity(byte[].class).length);
 
         // Get the background
         response = target().path("/theme/image/background").request().get();